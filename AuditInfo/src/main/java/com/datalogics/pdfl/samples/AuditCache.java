@@ -0,0 +1,352 @@
+/*
+ * AuditCache
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * An on-disk cache of audit results, so documents that have not changed since
+ * they were last audited are not audited again.
+ *
+ * A result is valid while the document's size, modification time and content
+ * fingerprint all match. The fingerprint hashes the start of the file and its
+ * tail, where the last trailer, startxref and (usually) the xref data live;
+ * any incremental save changes it.
+ *
+ * The cache file is append-only: every store or invalidation adds a record
+ * with its own checksum, and on open the last record for a path wins. A torn
+ * record at the end, left by a crash, is dropped. Once superseded records
+ * outnumber live ones, close() rewrites the file with just the live entries.
+ *
+ * Opening the same file again in one process, as concurrent SampleDaemon
+ * jobs do, shares the instance already open, so their appends and the final
+ * rewrite cannot overlap; the file is closed when its last user closes it.
+ * Separate processes must not use the same cache file at once.
+ */
+final class AuditCache implements Closeable {
+
+    private static final int MAGIC = 0x41554443; // "AUDC"
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_HEAD = 1024;
+    private static final int FINGERPRINT_TAIL = 64 * 1024;
+
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final long fingerprint;
+        final long[] totals;
+
+        Entry(long size, long modified, long fingerprint, long[] totals)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+            this.totals = totals;
+        }
+    }
+
+    /**
+     * The identity of a document on disk, as checked against a cached result.
+     */
+    static final class Stamp {
+        final String path;
+        final long size;
+        final long modified;
+        final long fingerprint;
+
+        private Stamp(String path, long size, long modified, long fingerprint)
+        {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /** the caches open in this process, by absolute file path; also guards users. */
+    private static final Map<Path, AuditCache> OPEN = new HashMap<>();
+
+    private final Path file;
+    private int users;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private DataOutputStream log;
+    private int records;
+    private long hits;
+    private long misses;
+
+    private AuditCache(Path file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Opens the cache file, creating it if needed, or shares the instance
+     * already open on it. Each open must be matched by a close.
+     */
+    static AuditCache open(Path file) throws IOException
+    {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            AuditCache cache = OPEN.get(key);
+            if (cache == null) {
+                cache = new AuditCache(key);
+                cache.load();
+                OPEN.put(key, cache);
+            }
+            ++cache.users;
+            return cache;
+        }
+    }
+
+    private void load() throws IOException
+    {
+        long good = 0;
+        if (Files.exists(file)) {
+            long fileSize = Files.size(file);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                    throw new IOException(file + " is not an audit cache");
+                good = 8;
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    // a length that is negative or runs past the end of the file is torn or corrupt.
+                    if (length < 0 || length > fileSize - good - 8)
+                        break;
+                    byte[] record = new byte[length];
+                    int checksum;
+                    try {
+                        in.readFully(record);
+                        checksum = in.readInt();
+                    } catch (EOFException e) {
+                        break; // torn write
+                    }
+                    CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum)
+                        break;
+                    apply(record);
+                    ++records;
+                    good += 4 + length + 4;
+                }
+            } catch (EOFException e) {
+                good = 0; // not even a header
+            }
+        }
+
+        if (good == 0) {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+        } else if (good < Files.size(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(good);
+            }
+        }
+        log = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.APPEND)));
+    }
+
+    private void apply(byte[] record) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String path = in.readUTF();
+        int count = in.readInt();
+        if (count < 0) {
+            entries.remove(path);
+            return;
+        }
+        long size = in.readLong();
+        long modified = in.readLong();
+        long fingerprint = in.readLong();
+        long[] totals = new long[count];
+        for (int i = 0; i < count; ++i)
+            totals[i] = in.readLong();
+        entries.put(path, new Entry(size, modified, fingerprint, totals));
+    }
+
+    private static byte[] entryRecord(String path, Entry entry) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(path);
+        out.writeInt(entry.totals.length);
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+        out.writeLong(entry.fingerprint);
+        for (long total : entry.totals)
+            out.writeLong(total);
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] record) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private void append(byte[] record) throws IOException
+    {
+        writeRecord(log, record);
+        log.flush();
+        ++records;
+    }
+
+    /**
+     * Reads what identifies the document's current contents: its size,
+     * modification time, and a hash of its first 1K and last 64K.
+     */
+    static Stamp stamp(Path document) throws IOException
+    {
+        long size = Files.size(document);
+        long modified = Files.getLastModifiedTime(document).toMillis();
+        CRC32C head = new CRC32C();
+        CRC32C tail = new CRC32C();
+        try (FileChannel channel = FileChannel.open(document, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(FINGERPRINT_TAIL, size));
+            readFully(channel, buffer.limit((int) Math.min(FINGERPRINT_HEAD, size)), 0);
+            head.update(buffer.flip());
+            buffer.clear();
+            readFully(channel, buffer, Math.max(0, size - buffer.capacity()));
+            tail.update(buffer.flip());
+        }
+        return new Stamp(document.toAbsolutePath().normalize().toString(), size, modified,
+                head.getValue() << 32 | tail.getValue());
+    }
+
+    /**
+     * Fills the buffer from the channel, which may take more than one read, or until the end of the file.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                break;
+            position += read;
+        }
+    }
+
+    /**
+     * @return the cached audit map for the document, or null if there is none or it is stale.
+     */
+    synchronized HashMap<String, Long> lookup(Stamp stamp)
+    {
+        Entry entry = entries.get(stamp.path);
+        if (entry == null || entry.size != stamp.size || entry.modified != stamp.modified
+                || entry.fingerprint != stamp.fingerprint || entry.totals.length != AuditCategory.VALUES.length) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        return PDFAuditor.toMap(entry.totals);
+    }
+
+    /**
+     * Records the audit map for the document.
+     */
+    synchronized void store(Stamp stamp, HashMap<String, Long> auditInfo) throws IOException
+    {
+        long[] totals = new long[AuditCategory.VALUES.length];
+        for (AuditCategory cat : AuditCategory.VALUES)
+            totals[cat.ordinal()] = auditInfo.getOrDefault(cat.label, 0L);
+
+        Entry entry = new Entry(stamp.size, stamp.modified, stamp.fingerprint, totals);
+        append(entryRecord(stamp.path, entry));
+        entries.put(stamp.path, entry);
+    }
+
+    /**
+     * Forgets the cached result for one document.
+     */
+    synchronized void invalidate(Path document) throws IOException
+    {
+        String path = document.toAbsolutePath().normalize().toString();
+        if (entries.remove(path) == null)
+            return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(path);
+        out.writeInt(-1);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Forgets every cached result.
+     */
+    synchronized void invalidateAll() throws IOException
+    {
+        entries.clear();
+        compact();
+    }
+
+    /**
+     * Rewrites the cache file with only the live entries, replacing it atomically.
+     */
+    synchronized void compact() throws IOException
+    {
+        log.close();
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (Map.Entry<String, Entry> e : entries.entrySet())
+                    writeRecord(out, entryRecord(e.getKey(), e.getValue()));
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            records = entries.size();
+        } finally {
+            log = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file, StandardOpenOption.APPEND)));
+        }
+    }
+
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+    synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (OPEN) {
+            if (--users > 0)
+                return;
+            OPEN.remove(file);
+            synchronized (this) {
+                if (records > 2 * entries.size() + 16)
+                    compact();
+                log.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * AuditCategory
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+/**
+ * The categories sized by the PDFAuditor. The ordinal of each category is its
+ * index into the long[] accumulator the ObjectEvaluator adds to, so recording a
+ * size never boxes; the label is the key used in the HashMap view returned by
+ * PDFAuditor.auditPDF.
+ */
+enum AuditCategory {
+    XREF_TABLE(PDFAuditor.XREF_TABLE),
+    OBJECT_COMPRESSION(PDFAuditor.OBJECT_COMPRESSION),
+    CONTENT_STREAMS(PDFAuditor.CONTENT_STREAMS),
+    XOBJECT_FORMS(PDFAuditor.XOBJECT_FORMS),
+    FONTS(PDFAuditor.FONTS),
+    IMAGES(PDFAuditor.IMAGES),
+    COLOR_SPACES(PDFAuditor.COLOR_SPACES),
+    EXT_GRAPHIC_STATES(PDFAuditor.EXT_GRAPHIC_STATES),
+    PATTERN(PDFAuditor.PATTERN),
+    SHADING(PDFAuditor.SHADING),
+    STRUCTURE_INFO(PDFAuditor.STRUCTURE_INFO),
+    BOOKMARKS(PDFAuditor.BOOKMARKS),
+    NAMED_DESTINATIONS(PDFAuditor.NAMED_DESTINATIONS),
+    LINK_ANNOTATIONS(PDFAuditor.LINK_ANNOTATIONS),
+    ACRO_FORMS(PDFAuditor.ACRO_FORMS),
+    COMMENTS_AND_3D(PDFAuditor.COMMENTS_AND_3D),
+    PIECE_INFO(PDFAuditor.PIECE_INFO),
+    THUMBNAILS(PDFAuditor.THUMBNAILS),
+    WEB_CAPTURE(PDFAuditor.WEB_CAPTURE),
+    EMBEDDED_FILES(PDFAuditor.EMBEDDED_FILES),
+    // these two are derived rather than accumulated.
+    DOC_OVERHEAD(PDFAuditor.DOC_OVERHEAD),
+    FILE_SIZE(PDFAuditor.FILE_SIZE);
+
+    static final AuditCategory[] VALUES = values();
+
+    final String label;
+
+    AuditCategory(String label)
+    {
+        this.label = label;
+    }
+
+    /**
+     * @return true for the categories that are sized directly from objects,
+     * as opposed to the file size and the overhead left over after sizing.
+     */
+    boolean isAccounted()
+    {
+        return this != DOC_OVERHEAD && this != FILE_SIZE;
+    }
+}
@@ -13,26 +13,113 @@ package com.datalogics.pdfl.samples;
 
 import com.datalogics.PDFL.Document;
 import com.datalogics.PDFL.Library;
-import com.datalogics.PDFL.LibraryException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 
 
 class AuditInfo {
 
-    public static void process(String input_file, String userPwd, String ownerPwd) {
+    public static void process(String input_file, String userPwd, String ownerPwd, boolean retainedSizes,
+                               boolean pageRows, boolean duplicates, boolean contentProfile, boolean images,
+                               boolean plan, long sampleObjects, long sampleMillis, AuditCache cache)
+            throws IOException, InterruptedException {
         Document pdfDocument = null;
 
         try {
+            // "-" reads the PDF from standard input and audits it in memory, without a temporary file.
+            ByteBuffer buffer = input_file.equals("-") ? ByteBuffer.wrap(System.in.readAllBytes()) : null;
             File inFile= new File(input_file);
-            long filesize = inFile.length();
-            pdfDocument = new Document(input_file);
+            long filesize = buffer != null ? buffer.remaining() : inFile.length();
+
+            // A cached result only holds the category totals, so it cannot answer the other reports.
+            AuditCache.Stamp stamp = null;
+            if (cache != null && buffer == null) {
+                stamp = AuditCache.stamp(inFile.toPath());
+                if (!retainedSizes && !pageRows && !duplicates && !contentProfile && !images && !plan) {
+                    HashMap<String, Long> cached = cache.lookup(stamp);
+                    if (cached != null) {
+                        printAudit(input_file, filesize, cached);
+                        System.out.println(String.format("%36s:\t%,8d hits, %,d misses","Audit cache",
+                                cache.getHits(), cache.getMisses()));
+                        return;
+                    }
+                }
+            }
+
+            // Read the cross-reference data ourselves so objects can be sized exactly.
+            XRefIndex xrefIndex = null;
+            if (buffer == null) {
+                pdfDocument = new Document(input_file);
+                try {
+                    xrefIndex = XRefIndex.open(inFile.toPath());
+                } catch (IOException e) {
+                    System.out.println("Cannot read cross-reference data, sizes are estimated: " + e.getMessage());
+                }
+            }
 
             // Audit the file
             final PDFAuditor auditor = new PDFAuditor();
-            final HashMap<String, Long> auditInfo = auditor.auditPDF(pdfDocument,filesize);
+            auditor.setRetainedSizes(retainedSizes);
+            auditor.setSampling(sampleObjects, sampleMillis);
+            auditor.setContentProfiling(contentProfile);
+            auditor.setImageReport(images);
+            auditor.setSavingsPlan(plan);
+            if (duplicates)
+                auditor.setDuplicateThreads(Runtime.getRuntime().availableProcessors());
+            if (pageRows) {
+                System.out.println(PageBreakdown.CSV_HEADER);
+                auditor.setPageRowHandler(row -> System.out.println(row.toCsv()));
+            }
+            final HashMap<String, Long> auditInfo = buffer != null ? auditor.auditPDF(buffer)
+                    : auditor.auditPDF(pdfDocument,filesize,xrefIndex);
+            // estimates are not cached, so a later exact audit is not answered with them.
+            if (stamp != null && auditor.getSamplingReport() == null)
+                cache.store(stamp, auditInfo);
 
+            printAudit(input_file, filesize, auditInfo);
+            System.out.println(String.format("%36s:\t%,8d hits, %,d misses","Size cache",
+                    auditor.getSizeCacheHits(), auditor.getSizeCacheMisses()));
+            if (auditInfo.containsKey(PDFAuditor.OUTLINE_NODES))
+                System.out.println(String.format("%36s:\t%,8d items, depth %d","Outline",
+                        auditInfo.get(PDFAuditor.OUTLINE_NODES), auditInfo.get(PDFAuditor.OUTLINE_DEPTH)));
+            if (!auditor.getNameTreeStats().isEmpty()) {
+                System.out.println("Name trees:");
+                for (NameTreeStats stats : auditor.getNameTreeStats())
+                    System.out.println(stats);
+            }
+
+            if (auditor.getSamplingReport() != null)
+                auditor.getSamplingReport().print(System.out);
+            if (auditor.getContentProfile() != null)
+                auditor.getContentProfile().print(System.out);
+            if (auditor.getImageReport() != null)
+                auditor.getImageReport().print(System.out);
+            if (auditor.getRetainedSizeReport() != null)
+                auditor.getRetainedSizeReport().print(System.out);
+            if (auditor.getSavingsPlan() != null)
+                auditor.getSavingsPlan().print(System.out);
+            if (auditor.getDuplicateReport() != null)
+                auditor.getDuplicateReport().print(System.out);
+        } catch (final Exception ex) {
+            // reported rather than swallowed, so a caller such as SampleDaemon can tell the audit failed.
+            System.err.println("error: " + input_file + ": " + ex.getClass().getSimpleName()
+                    + (ex.getMessage() != null ? ": " + ex.getMessage() : ""));
+            throw ex;
+        } finally {
+            if (pdfDocument != null) {
+                try {
+                    pdfDocument.close();
+                } catch (final Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private static void printAudit(String input_file, long filesize, HashMap<String, Long> auditInfo) {
             System.out.println(input_file +" file size:"+filesize);
 
             final String[] cats = {
@@ -56,38 +143,41 @@ class AuditInfo {
                         System.out.println(String.format("%36s:\t%,8d\t%8.2f%%",cat,val,(val * 100.0 / filesize)));
                 }
             }
-        } catch (LibraryException e) {
-                            e.printStackTrace();
-                        } catch (final Exception ex) {
-                try (StringWriter sw = new StringWriter();
-                     PrintWriter pw = new PrintWriter(sw)) {
-                    ex.printStackTrace(pw);
-                } catch (IOException ioe) {
-                    System.out.println("error: " + input_file + ": "
-                            + ex.getClass().getSimpleName());
-                    throw new IllegalStateException(ioe);
-                }
-            } finally {
-                if (pdfDocument != null) {
-                    try {
-                        pdfDocument.close();
-                    } catch (final Exception ignored) {
-                    }
-                }
-            }
     }
 
 
     /**
      * @param args command-line parameters.
      */
-    public static void main(final String[] args) {
-        System.out.println("AuditInfo sample:");
-        Library lib = new Library();
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        run(args, true);
+    }
+
+    /**
+     * Runs the sample with its command-line parameters.
+     *
+     * @param ownLibrary whether to create a Library for the audit; false when the
+     *                   calling thread already has one, as SampleDaemon workers do.
+     */
+    public static void run(final String[] args, boolean ownLibrary) throws IOException, InterruptedException {
         int i = 0;
         String ownerPwd= null;
         String userPwd = null;
         String input_file=null;
+        boolean retainedSizes = false;
+        boolean pageRows = false;
+        boolean duplicates = false;
+        boolean contentProfile = false;
+        boolean images = false;
+        boolean plan = false;
+        boolean batch = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        BatchAuditor.Format format = BatchAuditor.Format.JSONL;
+        String cacheFile = null;
+        boolean clearCache = false;
+        boolean invalidate = false;
+        long sampleObjects = 0;
+        long sampleMillis = 0;
         int numArgs = args.length;
         while (i < numArgs-1)
         {
@@ -95,14 +185,72 @@ class AuditInfo {
                 ownerPwd = args[++i];
             else if (args[i].equals("-u") || args[i].equals(("-p")))
                 userPwd = args[++i];
+            else if (args[i].equals("-r"))
+                retainedSizes = true;
+            else if (args[i].equals("-pages"))
+                pageRows = true;
+            else if (args[i].equals("-d"))
+                duplicates = true;
+            else if (args[i].equals("-ops"))
+                contentProfile = true;
+            else if (args[i].equals("-images"))
+                images = true;
+            else if (args[i].equals("-plan"))
+                plan = true;
+            else if (args[i].equals("-batch"))
+                batch = true;
+            else if (args[i].equals("-j"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-format"))
+                format = BatchAuditor.Format.valueOf(args[++i].toUpperCase());
+            else if (args[i].equals("-sample"))
+                sampleObjects = Long.parseLong(args[++i]);
+            else if (args[i].equals("-sample-ms"))
+                sampleMillis = Long.parseLong(args[++i]);
+            else if (args[i].equals("-cache"))
+                cacheFile = args[++i];
+            else if (args[i].equals("-cache-clear"))
+                clearCache = true;
+            else if (args[i].equals("-invalidate"))
+                invalidate = true;
             else
                 break;
             ++i;
         }
-        if(i < args.length)
-            input_file = args[i];
+        try (AuditCache cache = cacheFile != null ? AuditCache.open(Paths.get(cacheFile)) : null) {
+            if (cache != null && clearCache)
+                cache.invalidateAll();
+            if (cache != null && invalidate) {
+                // forget the named documents so they are audited afresh.
+                for (int j = i; j < numArgs; ++j)
+                    cache.invalidate(Paths.get(args[j]));
+            }
+
+            if (batch) {
+                // every remaining argument is a file, directory, glob or @list; each worker makes its own Library.
+                BatchAuditor auditor = new BatchAuditor(threads, format, System.out);
+                auditor.setCache(cache);
+                auditor.setSampling(sampleObjects, sampleMillis);
+                auditor.setSavingsPlan(plan, duplicates);
+                int failures = auditor.run(Arrays.asList(args).subList(i, numArgs));
+                if (failures > 0)
+                    System.err.println(failures + " documents could not be audited.");
+                return;
+            }
+
+            System.out.println("AuditInfo sample:");
+            Library lib = ownLibrary ? new Library() : null;
+            try {
+                if(i < args.length)
+                    input_file = args[i];
 
-        if(args.length >0)
-            process(input_file,userPwd,ownerPwd);
+                if(args.length >0)
+                    process(input_file,userPwd,ownerPwd,retainedSizes,pageRows,duplicates,contentProfile,images,plan,
+                            sampleObjects,sampleMillis,cache);
+            } finally {
+                if (lib != null)
+                    lib.delete();
+            }
+        }
     }
 }
\ No newline at end of file
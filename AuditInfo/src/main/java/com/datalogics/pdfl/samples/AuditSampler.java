@@ -0,0 +1,422 @@
+/*
+ * AuditSampler
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Estimates the audit's category totals from a random sample of the
+ * document's objects, for files too large to enumerate within a deadline.
+ *
+ * Objects are read straight from the file through the cross-reference index,
+ * so only the sampled objects (and the object streams holding them) are
+ * touched. The object numbers are split into contiguous strata, since writers
+ * tend to store similar objects together, and each round draws one more
+ * object from every stratum without replacement until the object or time
+ * budget runs out. Totals are the usual stratified estimates, with 95%
+ * confidence intervals from the within-stratum variance.
+ *
+ * Only objects are stratified, not pages. A page's bytes are the objects it
+ * reaches, many of them shared with other pages, so page strata would count
+ * shared objects more than once, and finding the pages means walking the
+ * page tree, reading the very objects sampling is meant to skip.
+ *
+ * A sampled object is classified by its own dictionary, not by what refers to
+ * it as the full audit does; font programs, ICC profiles and untyped streams
+ * are told apart by their keys, and thumbnails count as images.
+ */
+final class AuditSampler {
+
+    static final int DEFAULT_STRATA = 64;
+    static final long DEFAULT_EXACT_BELOW = 256L * 1024 * 1024;
+
+    private static final double Z_95 = 1.96;
+    private static final int MIN_ROUNDS = 2;
+    private static final int CACHED_OBJECT_STREAMS = 8;
+
+    private static final Set<String> MARKUP_ANNOTS = new HashSet<>(Arrays.asList(
+            "Text", "FreeText", "Line", "Square", "Circle", "Polygon", "PolyLine", "Highlight", "Underline",
+            "Squiggly", "StrikeOut", "Stamp", "Caret", "Ink", "Redact", "3D"));
+    private static final Set<String> COLOR_SPACE_FAMILIES = new HashSet<>(Arrays.asList(
+            "ICCBased", "Indexed", "Separation", "DeviceN", "Lab", "CalGray", "CalRGB"));
+    private static final Set<String> FONT_PROGRAM_SUBTYPES = new HashSet<>(Arrays.asList(
+            "Type1C", "CIDFontType0C", "OpenType"));
+
+    /**
+     * A decoded object stream: its members' object numbers and their offsets
+     * from the start of the decoded data, in offset order.
+     */
+    private static final class ObjectStream {
+        final byte[] data;
+        final int[] ids;
+        final int[] offsets;
+
+        ObjectStream(byte[] data, int[] ids, int[] offsets)
+        {
+            this.data = data;
+            this.ids = ids;
+            this.offsets = offsets;
+        }
+    }
+
+    private static final class Stratum {
+        final int first;
+        final int count;
+        final Map<Integer, Integer> swapped = new HashMap<>();
+        final double[] sums = new double[AuditCategory.VALUES.length];
+        final double[] squares = new double[AuditCategory.VALUES.length];
+        int drawn;
+
+        Stratum(int first, int count)
+        {
+            this.first = first;
+            this.count = count;
+        }
+
+        /**
+         * Draws the next object number by a Fisher-Yates step over the
+         * stratum, keeping only the positions that were swapped.
+         */
+        int draw(Random random)
+        {
+            int j = drawn + random.nextInt(count - drawn);
+            int chosen = swapped.getOrDefault(j, j);
+            swapped.put(j, swapped.getOrDefault(drawn, drawn));
+            swapped.remove(drawn);
+            ++drawn;
+            return first + chosen;
+        }
+    }
+
+    private final XRefIndex index;
+    private final long docSize;
+    private final long maxObjects;
+    private final long maxMillis;
+    private final Random random;
+    private final Map<Integer, ObjectStream> objectStreams =
+            new LinkedHashMap<Integer, ObjectStream>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ObjectStream> eldest) {
+                    return size() > CACHED_OBJECT_STREAMS;
+                }
+            };
+    private int unreadable;
+
+    /**
+     * @param index the cross-reference index of the file, which also reads its objects.
+     * @param docSize the size of the file in bytes.
+     * @param maxObjects the most objects to sample, or 0 for no limit.
+     * @param maxMillis the time to stop sampling after, or 0 for no limit.
+     */
+    AuditSampler(XRefIndex index, long docSize, long maxObjects, long maxMillis)
+    {
+        this.index = index;
+        this.docSize = docSize;
+        this.maxObjects = maxObjects;
+        this.maxMillis = maxMillis;
+        // the same file gets the same sample, so repeated audits agree.
+        this.random = new Random(docSize * 31 + index.getSize());
+    }
+
+    /**
+     * @return the number of objects a sample would be drawn from.
+     */
+    static int getPopulation(XRefIndex index)
+    {
+        return Math.max(index.getSize() - 1, 0);
+    }
+
+    SamplingReport run()
+    {
+        final long start = System.nanoTime();
+        final int population = getPopulation(index);
+        final int strataCount = Math.max(1, Math.min(DEFAULT_STRATA, population / MIN_ROUNDS));
+        Stratum[] strata = new Stratum[strataCount];
+        for (int h = 0; h < strataCount; ++h) {
+            int first = 1 + (int) ((long) population * h / strataCount);
+            int next = 1 + (int) ((long) population * (h + 1) / strataCount);
+            strata[h] = new Stratum(first, next - first);
+        }
+
+        long[] unit = new long[AuditCategory.VALUES.length];
+        long sampled = 0;
+        int rounds = 0;
+        boolean more = population > 0;
+        while (more) {
+            more = false;
+            for (Stratum stratum : strata) {
+                if (stratum.drawn == stratum.count)
+                    continue;
+                Arrays.fill(unit, 0);
+                measure(stratum.draw(random), unit);
+                for (int c = 0; c < unit.length; ++c) {
+                    stratum.sums[c] += unit[c];
+                    stratum.squares[c] += (double) unit[c] * unit[c];
+                }
+                ++sampled;
+                more |= stratum.drawn < stratum.count;
+            }
+            ++rounds;
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            if (rounds >= MIN_ROUNDS && ((maxObjects > 0 && sampled >= maxObjects)
+                    || (maxMillis > 0 && elapsed >= maxMillis)))
+                break;
+        }
+
+        long[] estimates = new long[AuditCategory.VALUES.length];
+        long[] margins = new long[AuditCategory.VALUES.length];
+        for (final AuditCategory cat : AuditCategory.VALUES) {
+            double total = 0;
+            double variance = 0;
+            for (Stratum stratum : strata) {
+                if (stratum.drawn == 0)
+                    continue;
+                double mean = stratum.sums[cat.ordinal()] / stratum.drawn;
+                total += stratum.count * mean;
+                if (stratum.drawn > 1) {
+                    double s2 = (stratum.squares[cat.ordinal()] - stratum.drawn * mean * mean) / (stratum.drawn - 1);
+                    double fpc = 1.0 - (double) stratum.drawn / stratum.count;
+                    variance += (double) stratum.count * stratum.count * fpc * Math.max(s2, 0) / stratum.drawn;
+                }
+            }
+            estimates[cat.ordinal()] = Math.round(total);
+            margins[cat.ordinal()] = Math.round(Z_95 * Math.sqrt(variance));
+        }
+
+        // classic xref tables are known exactly. The DOC_OVERHEAD slot held each object's
+        // accounted bytes, so what it estimated is the total accounted for by objects.
+        estimates[AuditCategory.XREF_TABLE.ordinal()] += index.getXRefTableBytes();
+        estimates[AuditCategory.DOC_OVERHEAD.ordinal()] = docSize - index.getXRefTableBytes()
+                - estimates[AuditCategory.DOC_OVERHEAD.ordinal()];
+        estimates[AuditCategory.FILE_SIZE.ordinal()] = docSize;
+        margins[AuditCategory.FILE_SIZE.ordinal()] = 0;
+
+        return new SamplingReport(estimates, margins, sampled, population, unreadable,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Adds the bytes one object contributes to each category into unit, and
+     * the bytes it accounts for in all into unit's DOC_OVERHEAD slot.
+     */
+    private void measure(int id, long[] unit)
+    {
+        try {
+            long span = index.getSpan(id);
+            int container = index.getContainer(id);
+            if (span >= 0) {
+                XRefIndex.RawObject obj = index.readObject(id);
+                AuditCategory category = classify(obj.value, obj.stream);
+                if (category == AuditCategory.OBJECT_COMPRESSION)
+                    unit[category.ordinal()] = span - objectStream(id).data.length;
+                else if (category != null)
+                    unit[category.ordinal()] = span;
+            } else if (container >= 0) {
+                ObjectStream stream = objectStream(container);
+                for (int i = 0; i < stream.ids.length; ++i) {
+                    if (stream.ids[i] != id)
+                        continue;
+                    int end = (i + 1 < stream.ids.length) ? stream.offsets[i + 1] : stream.data.length;
+                    AuditCategory category = classify(XRefIndex.parseObject(stream.data, stream.offsets[i]), false);
+                    if (category != null)
+                        unit[category.ordinal()] = end - stream.offsets[i];
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            ++unreadable; // counted as overhead
+            Arrays.fill(unit, 0);
+        }
+
+        long accounted = 0;
+        for (final AuditCategory cat : AuditCategory.VALUES)
+            if (cat.isAccounted())
+                accounted += unit[cat.ordinal()];
+        unit[AuditCategory.DOC_OVERHEAD.ordinal()] = accounted;
+    }
+
+    private ObjectStream objectStream(int id) throws IOException
+    {
+        ObjectStream stream = objectStreams.get(id);
+        if (stream != null)
+            return stream;
+
+        Map<String, Object> dict = index.readObject(id).getDict();
+        if (dict == null || !(dict.get("N") instanceof Long) || !(dict.get("First") instanceof Long))
+            throw new IOException("object " + id + " is not an object stream");
+        int n = (int) (long) (Long) dict.get("N");
+        int first = (int) (long) (Long) dict.get("First");
+        byte[] data = index.readStream(id);
+
+        long[] pairs = XRefIndex.readIntegers(data, n * 2);
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; ++i)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> pairs[i * 2 + 1]));
+        int[] ids = new int[n];
+        int[] offsets = new int[n];
+        for (int i = 0; i < n; ++i) {
+            ids[i] = (int) pairs[order[i] * 2];
+            offsets[i] = first + (int) pairs[order[i] * 2 + 1];
+        }
+        stream = new ObjectStream(data, ids, offsets);
+        objectStreams.put(id, stream);
+        return stream;
+    }
+
+    private static String name(Map<String, Object> dict, String key)
+    {
+        Object value = dict.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * @return the category an object counts under by its own contents, or
+     * null if it only counts as document overhead.
+     */
+    static AuditCategory classify(Object value, boolean stream)
+    {
+        if (value instanceof List) {
+            List<?> array = (List<?>) value;
+            if (!array.isEmpty() && array.get(0) instanceof String && COLOR_SPACE_FAMILIES.contains(array.get(0)))
+                return AuditCategory.COLOR_SPACES;
+            return null;
+        }
+        if (!(value instanceof Map))
+            return null;
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> dict = (Map<String, Object>) value;
+        String type = name(dict, "Type");
+        String subtype = name(dict, "Subtype");
+
+        if (stream) {
+            if ("ObjStm".equals(type))
+                return AuditCategory.OBJECT_COMPRESSION;
+            if ("XRef".equals(type))
+                return AuditCategory.XREF_TABLE;
+            if ("Image".equals(subtype))
+                return AuditCategory.IMAGES;
+            if ("Form".equals(subtype))
+                return AuditCategory.XOBJECT_FORMS;
+            if ("EmbeddedFile".equals(type))
+                return AuditCategory.EMBEDDED_FILES;
+            if ("Metadata".equals(type))
+                return null;
+            if (dict.containsKey("Length1") || dict.containsKey("Length2") || FONT_PROGRAM_SUBTYPES.contains(subtype))
+                return AuditCategory.FONTS;
+            if (dict.containsKey("ShadingType"))
+                return AuditCategory.SHADING;
+            if (dict.containsKey("PatternType"))
+                return AuditCategory.PATTERN;
+            if (dict.containsKey("N") && !dict.containsKey("First"))
+                return AuditCategory.COLOR_SPACES; // ICC profile
+            if (type == null && subtype == null)
+                return AuditCategory.CONTENT_STREAMS;
+            return null;
+        }
+
+        if ("Font".equals(type) || "FontDescriptor".equals(type) || "Encoding".equals(type))
+            return AuditCategory.FONTS;
+        if ("ExtGState".equals(type))
+            return AuditCategory.EXT_GRAPHIC_STATES;
+        if ("Pattern".equals(type) || dict.containsKey("PatternType"))
+            return AuditCategory.PATTERN;
+        if (dict.containsKey("ShadingType"))
+            return AuditCategory.SHADING;
+        if ("Filespec".equals(type) || "FileSpec".equals(type))
+            return AuditCategory.EMBEDDED_FILES;
+        if ("StructTreeRoot".equals(type) || "StructElem".equals(type) || "MCR".equals(type) || "OBJR".equals(type))
+            return AuditCategory.STRUCTURE_INFO;
+        if ("Outlines".equals(type) || (dict.containsKey("Title") && dict.containsKey("Parent")))
+            return AuditCategory.BOOKMARKS;
+        if ("Link".equals(subtype))
+            return AuditCategory.LINK_ANNOTATIONS;
+        if ("Widget".equals(subtype) || dict.containsKey("FT"))
+            return AuditCategory.ACRO_FORMS;
+        if (MARKUP_ANNOTS.contains(subtype) || "Popup".equals(subtype))
+            return AuditCategory.COMMENTS_AND_3D;
+        if (dict.containsKey("Limits") || (type == null && dict.containsKey("Names") && dict.size() <= 2))
+            return AuditCategory.NAMED_DESTINATIONS;
+        if (dict.containsKey("PieceInfo") && dict.size() == 1)
+            return AuditCategory.PIECE_INFO;
+        return null;
+    }
+
+    /**
+     * The estimated category totals and their 95% confidence intervals.
+     */
+    static final class SamplingReport {
+        private final long[] estimates;
+        private final long[] margins;
+        private final long sampled;
+        private final long population;
+        private final int unreadable;
+        private final long elapsedMillis;
+
+        SamplingReport(long[] estimates, long[] margins, long sampled, long population, int unreadable,
+                       long elapsedMillis)
+        {
+            this.estimates = estimates;
+            this.margins = margins;
+            this.sampled = sampled;
+            this.population = population;
+            this.unreadable = unreadable;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return the estimated totals, indexed by AuditCategory ordinal.
+         */
+        long[] getEstimates()
+        {
+            return estimates.clone();
+        }
+
+        /**
+         * @return half the width of the 95% confidence interval around the
+         * category's estimate, which covers sampling error but not the bias of
+         * classifying objects by their own dictionaries.
+         */
+        long getMargin(AuditCategory category)
+        {
+            return margins[category.ordinal()];
+        }
+
+        long getSampled()
+        {
+            return sampled;
+        }
+
+        long getPopulation()
+        {
+            return population;
+        }
+
+        void print(PrintStream out)
+        {
+            out.println(String.format("Sampled %,d of %,d objects in %,d ms; 95%% confidence intervals:",
+                    sampled, population, elapsedMillis));
+            out.println("  The intervals cover sampling error only. Objects are classified by their own dictionaries, not by");
+            out.println("  what refers to them, so untyped streams, outline items, structure elements and annotations can");
+            out.println("  land in other categories than an exact audit puts them in.");
+            if (unreadable > 0)
+                out.println(String.format("  %,d sampled objects could not be read and count as overhead.", unreadable));
+            for (final AuditCategory cat : AuditCategory.VALUES) {
+                if (estimates[cat.ordinal()] != 0 || margins[cat.ordinal()] != 0)
+                    out.println(String.format("%36s:\t%,8d +/- %,d", cat.label,
+                            estimates[cat.ordinal()], margins[cat.ordinal()]));
+            }
+        }
+    }
+}
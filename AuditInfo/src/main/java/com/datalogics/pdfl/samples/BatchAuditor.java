@@ -0,0 +1,417 @@
+/*
+ * BatchAuditor
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.Document;
+import com.datalogics.PDFL.Library;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Audits many documents with a fixed pool of worker threads. Each worker
+ * creates its own Library and opens one Document at a time; the input paths
+ * are handed over through a small bounded queue and each result is written
+ * as soon as it is ready, so memory use does not depend on the number of
+ * documents.
+ *
+ * Inputs may be files, directories (searched for *.pdf), glob patterns such
+ * as "scans/*.pdf", or "@list.txt" naming a file with one path per line.
+ * Results are written as JSON Lines or CSV, one row per document. A row
+ * says whether its totals were sampled, and a sampled row carries the 95%
+ * margin of each category's estimate, so estimates are never mistaken for
+ * measurements.
+ */
+final class BatchAuditor {
+
+    enum Format { JSONL, CSV }
+
+    private static final Path END = Paths.get("");
+
+    private final int threads;
+    private final Format format;
+    private final PrintStream out;
+    private AuditCache cache;
+    private long sampleObjects;
+    private long sampleMillis;
+    private boolean plan;
+    private boolean duplicates;
+
+    /**
+     * @param threads the number of documents audited at the same time.
+     * @param format how the results are written.
+     * @param out where the results are written.
+     */
+    BatchAuditor(int threads, Format format, PrintStream out)
+    {
+        this.threads = threads;
+        this.format = format;
+        this.out = out;
+    }
+
+    /**
+     * Reuses results from the cache for unchanged documents and stores new ones in it.
+     */
+    void setCache(AuditCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Samples large documents instead of auditing them exactly; see PDFAuditor.setSampling.
+     */
+    void setSampling(long maxObjects, long maxMillis)
+    {
+        this.sampleObjects = maxObjects;
+        this.sampleMillis = maxMillis;
+    }
+
+    /**
+     * Adds each document's savings plan to its row; see PDFAuditor.setSavingsPlan.
+     *
+     * @param duplicates whether to search for duplicate streams, so the plan can include deduplication.
+     */
+    void setSavingsPlan(boolean plan, boolean duplicates)
+    {
+        this.plan = plan;
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * Audits every document named by the inputs and waits for the last result.
+     *
+     * @return the number of documents that could not be audited.
+     */
+    int run(List<String> inputs) throws IOException, InterruptedException
+    {
+        final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(threads * 4);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+
+        if (format == Format.CSV)
+            out.println(plan ? csvHeader() + planCsvHeader() : csvHeader());
+
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread(() -> {
+                Library lib = null;
+                String startError = null;
+                try {
+                    lib = new Library();
+                } catch (Throwable e) {
+                    startError = "Library: " + describe(e);
+                }
+                try {
+                    // a worker without a Library still takes its share of the queue, failing each document,
+                    // so the producer never waits on a queue nobody empties.
+                    for (Path path = take(queue); path != END; path = take(queue)) {
+                        String row = startError == null ? auditOne(path, failures) : errorRow(path, startError, failures);
+                        synchronized (out) {
+                            out.println(row);
+                        }
+                    }
+                } finally {
+                    if (lib != null)
+                        lib.delete();
+                }
+            }, "BatchAuditor-" + t);
+            workers[t].start();
+        }
+
+        try {
+            for (String input : inputs)
+                expand(input, queue);
+        } finally {
+            for (int t = 0; t < threads; ++t)
+                queue.put(END);
+            for (Thread worker : workers)
+                worker.join();
+        }
+        return failures.get();
+    }
+
+    private static Path take(BlockingQueue<Path> queue)
+    {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return END;
+        }
+    }
+
+    /**
+     * Queues the documents one input names, without listing them all first.
+     */
+    private static void expand(String input, BlockingQueue<Path> queue) throws IOException, InterruptedException
+    {
+        if (input.startsWith("@")) {
+            try (BufferedReader list = Files.newBufferedReader(Paths.get(input.substring(1)), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = list.readLine()) != null) {
+                    if (!line.trim().isEmpty())
+                        queue.put(Paths.get(line.trim()));
+                }
+            }
+            return;
+        }
+
+        int wildcard = firstWildcard(input);
+        if (wildcard >= 0) {
+            // walk from the directory part of the pattern that has no wildcards, and match the rest of the
+            // pattern against paths relative to it, no deeper than it reaches unless it has a **.
+            int separator = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf('\\', wildcard));
+            Path base = separator < 0 ? Paths.get(".")
+                    : Paths.get(separator == 0 ? input.substring(0, 1) : input.substring(0, separator));
+            final Path start = base.normalize();
+            String rest = relativePattern(input.substring(separator + 1));
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+            int depth = rest.contains("**") ? Integer.MAX_VALUE : rest.split("/").length;
+            walk(start.toString().isEmpty() ? Paths.get(".") : start, depth,
+                    path -> matcher.matches(start.relativize(path).normalize()), queue);
+            return;
+        }
+
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path))
+            walk(path, Integer.MAX_VALUE, p -> p.getFileName().toString().toLowerCase().endsWith(".pdf"), queue);
+        else
+            queue.put(path);
+    }
+
+    /**
+     * @return the part of a glob pattern below its base directory, with '/' separators and no "." segments.
+     */
+    private static String relativePattern(String pattern)
+    {
+        StringBuilder rest = new StringBuilder();
+        for (String segment : pattern.replace('\\', '/').split("/")) {
+            if (segment.isEmpty() || segment.equals("."))
+                continue;
+            if (rest.length() > 0)
+                rest.append('/');
+            rest.append(segment);
+        }
+        return rest.toString();
+    }
+
+    private static int firstWildcard(String input)
+    {
+        for (int i = 0; i < input.length(); ++i) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{')
+                return i;
+        }
+        return -1;
+    }
+
+    private interface PathFilter {
+        boolean accept(Path path);
+    }
+
+    private static void walk(Path start, int maxDepth, PathFilter filter, BlockingQueue<Path> queue)
+            throws IOException, InterruptedException
+    {
+        try (Stream<Path> paths = Files.walk(start, maxDepth)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isRegularFile(path) && filter.accept(path))
+                    queue.put(path);
+            }
+        }
+    }
+
+    private String auditOne(Path path, AtomicInteger failures)
+    {
+        Document doc = null;
+        try {
+            long filesize = Files.size(path);
+            AuditCache.Stamp stamp = null;
+            // a cached result only holds the category totals, which are not enough to plan with.
+            if (cache != null && !plan) {
+                stamp = AuditCache.stamp(path);
+                HashMap<String, Long> cached = cache.lookup(stamp);
+                if (cached != null)
+                    return format == Format.CSV ? csvRow(path, cached, null, null) : jsonRow(path, cached, null, null);
+            }
+
+            doc = new Document(path.toString());
+            XRefIndex xrefIndex = null;
+            try {
+                xrefIndex = XRefIndex.open(path);
+            } catch (IOException ignored) {
+                // sizes are estimated instead.
+            }
+            PDFAuditor auditor = new PDFAuditor();
+            auditor.setSampling(sampleObjects, sampleMillis);
+            auditor.setSavingsPlan(plan);
+            if (plan && duplicates)
+                auditor.setDuplicateThreads(1); // documents are already audited in parallel.
+            HashMap<String, Long> auditInfo = auditor.auditPDF(doc, filesize, xrefIndex);
+            if (cache != null && stamp != null && auditor.getSamplingReport() == null)
+                cache.store(stamp, auditInfo);
+            AuditSampler.SamplingReport sampling = auditor.getSamplingReport();
+            String row = format == Format.CSV ? csvRow(path, auditInfo, sampling, null)
+                    : jsonRow(path, auditInfo, sampling, null);
+            return plan ? withPlan(row, auditor.getSavingsPlan()) : row;
+        } catch (Exception ex) {
+            return errorRow(path, describe(ex), failures);
+        } finally {
+            if (doc != null) {
+                try {
+                    doc.close();
+                } catch (final Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private String errorRow(Path path, String error, AtomicInteger failures)
+    {
+        failures.incrementAndGet();
+        String row = format == Format.CSV ? csvRow(path, null, null, error) : jsonRow(path, null, null, error);
+        return plan ? withPlan(row, null) : row;
+    }
+
+    private static String describe(Throwable t)
+    {
+        return t.getClass().getSimpleName() + (t.getMessage() != null ? ": " + t.getMessage() : "");
+    }
+
+    static String csvHeader()
+    {
+        StringBuilder header = new StringBuilder("file");
+        for (AuditCategory cat : AuditCategory.VALUES)
+            header.append(',').append(csvField(cat.label));
+        header.append(",sampled");
+        for (AuditCategory cat : AuditCategory.VALUES)
+            header.append(',').append(csvField(cat.label + " margin"));
+        return header.append(",error").toString();
+    }
+
+    /**
+     * @param sampling the report of a sampled audit, whose totals are estimates, or null for an exact one.
+     */
+    static String csvRow(Path path, HashMap<String, Long> auditInfo, AuditSampler.SamplingReport sampling, String error)
+    {
+        StringBuilder row = new StringBuilder(csvField(path.toString()));
+        for (AuditCategory cat : AuditCategory.VALUES) {
+            row.append(',');
+            if (auditInfo != null)
+                row.append(auditInfo.get(cat.label));
+        }
+        row.append(',');
+        if (auditInfo != null)
+            row.append(sampling != null);
+        // the margins are half the width of 95% confidence intervals, and only sampled audits have them.
+        for (AuditCategory cat : AuditCategory.VALUES) {
+            row.append(',');
+            if (sampling != null)
+                row.append(sampling.getMargin(cat));
+        }
+        row.append(',');
+        if (error != null)
+            row.append(csvField(error));
+        return row.toString();
+    }
+
+    /**
+     * @param sampling the report of a sampled audit, whose totals are estimates, or null for an exact one.
+     */
+    static String jsonRow(Path path, HashMap<String, Long> auditInfo, AuditSampler.SamplingReport sampling,
+                          String error)
+    {
+        StringBuilder row = new StringBuilder("{\"file\":").append(jsonString(path.toString()));
+        if (auditInfo != null) {
+            for (AuditCategory cat : AuditCategory.VALUES)
+                row.append(',').append(jsonString(cat.label)).append(':').append(auditInfo.get(cat.label));
+            row.append(",\"sampled\":").append(sampling != null);
+        }
+        if (sampling != null) {
+            row.append(",\"margins\":{");
+            for (AuditCategory cat : AuditCategory.VALUES) {
+                if (cat.ordinal() > 0)
+                    row.append(',');
+                row.append(jsonString(cat.label)).append(':').append(sampling.getMargin(cat));
+            }
+            row.append('}');
+        }
+        if (error != null)
+            row.append(",\"error\":").append(jsonString(error));
+        return row.append('}').toString();
+    }
+
+    static String planCsvHeader()
+    {
+        StringBuilder header = new StringBuilder();
+        for (SavingsPlan.Optimization optimization : SavingsPlan.OPTIMIZATIONS)
+            header.append(',').append(csvField(optimization.label));
+        return header.append(",worthwhile").toString();
+    }
+
+    /**
+     * Adds the plan's savings to a row, or empty columns (CSV) if there is no plan.
+     */
+    private String withPlan(String row, SavingsPlan savingsPlan)
+    {
+        StringBuilder columns = new StringBuilder();
+        if (format == Format.CSV) {
+            for (SavingsPlan.Optimization optimization : SavingsPlan.OPTIMIZATIONS) {
+                columns.append(',');
+                if (savingsPlan != null)
+                    columns.append(savingsPlan.getSavings(optimization));
+            }
+            columns.append(',');
+            if (savingsPlan != null)
+                columns.append(savingsPlan.isWorthwhile());
+            return row + columns;
+        }
+
+        if (savingsPlan == null)
+            return row;
+        columns.append(",\"plan\":[");
+        for (SavingsPlan.Optimization optimization : savingsPlan.getRanked()) {
+            if (columns.charAt(columns.length() - 1) != '[')
+                columns.append(',');
+            columns.append("{\"optimization\":").append(jsonString(optimization.name()))
+                    .append(",\"bytes\":").append(savingsPlan.getSavings(optimization)).append('}');
+        }
+        columns.append("],\"worthwhile\":").append(savingsPlan.isWorthwhile());
+        return row.substring(0, row.length() - 1) + columns + '}';
+    }
+
+    private static String csvField(String value)
+    {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    static String jsonString(String value)
+    {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < 0x20)
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * BufferInputStream
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a PDF held in memory, as the pieces XRefIndex.map or XRefIndex.split
+ * make, without copying it. Every piece is read through its own duplicate, so
+ * the index can go on reading the same buffers.
+ */
+final class BufferInputStream extends InputStream {
+
+    private final ByteBuffer[] chunks;
+    private int chunk;
+    private long position;
+    private long mark;
+
+    BufferInputStream(ByteBuffer[] chunks)
+    {
+        this.chunks = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; ++i)
+            this.chunks[i] = chunks[i].duplicate();
+    }
+
+    private ByteBuffer current()
+    {
+        while (chunk < chunks.length && !chunks[chunk].hasRemaining())
+            ++chunk;
+        return chunk < chunks.length ? chunks[chunk] : null;
+    }
+
+    @Override
+    public int read()
+    {
+        ByteBuffer buffer = current();
+        if (buffer == null)
+            return -1;
+        ++position;
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        if (len == 0)
+            return 0;
+        ByteBuffer buffer = current();
+        if (buffer == null)
+            return -1;
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        long skipped = 0;
+        while (skipped < n) {
+            ByteBuffer buffer = current();
+            if (buffer == null)
+                break;
+            int count = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            skipped += count;
+        }
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        long remaining = 0;
+        for (int i = chunk; i < chunks.length; ++i)
+            remaining += chunks[i].remaining();
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit)
+    {
+        mark = position;
+    }
+
+    @Override
+    public void reset()
+    {
+        for (ByteBuffer buffer : chunks)
+            buffer.rewind();
+        chunk = 0;
+        position = 0;
+        skip(mark);
+    }
+}
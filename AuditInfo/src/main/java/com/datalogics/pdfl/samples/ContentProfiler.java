@@ -0,0 +1,336 @@
+/*
+ * ContentProfiler
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.PDFArray;
+import com.datalogics.PDFL.PDFObject;
+import com.datalogics.PDFL.PDFStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Profiles page content streams by tokenizing their decoded bytes directly,
+ * without building Content or Element objects. The tokenizer is a byte-at-a-
+ * time state machine over one reused buffer: it tells operands from
+ * operators, skips strings, names, comments and inline image data, and only
+ * counts, so it allocates nothing per token.
+ *
+ * Besides the document totals it keeps the pages that cost the most to
+ * render.
+ */
+final class ContentProfiler {
+
+    static final int DEFAULT_TOP_COUNT = 10;
+
+    private static final byte WHITE = 0;
+    private static final byte DELIMITER = 1;
+    private static final byte REGULAR = 2;
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        Arrays.fill(CLASSES, REGULAR);
+        for (char c : new char[] {0, '\t', '\n', '\f', '\r', ' '})
+            CLASSES[c] = WHITE;
+        for (char c : "()<>[]{}/%".toCharArray())
+            CLASSES[c] = DELIMITER;
+    }
+
+    private static final int KEY_TRUE = ContentStats.key("true");
+    // "false" is too long to pack; its first four bytes stand for it.
+    private static final int KEY_FALS = ContentStats.key("fals");
+    private static final int KEY_NULL = ContentStats.key("null");
+    private static final int KEY_ID = ContentStats.key("ID");
+    private static final int KEY_EI = ContentStats.key("EI");
+
+    // tokenizer states
+    private static final int NORMAL = 0;
+    private static final int TOKEN = 1;
+    private static final int NAME = 2;
+    private static final int STRING = 3;
+    private static final int HEX = 4;
+    private static final int LESS_THAN = 5;
+    private static final int COMMENT = 6;
+    private static final int INLINE_DATA = 7;
+
+    private final byte[] buffer = new byte[StreamLengthCounter.BUFFER_SIZE];
+    private final long cap;
+    private final int topCount;
+    private final ContentStats totals = new ContentStats(0);
+    private final PriorityQueue<ContentStats> costliest =
+            new PriorityQueue<>(Comparator.comparingLong(ContentStats::getCost));
+    private int pages;
+
+    private int state;
+    private int token;
+    private int tokenLength;
+    private boolean tokenIsNumber;
+    private int depth;
+    private boolean escape;
+    private int inlineMatch;
+    private long inlineBytes;
+
+    /**
+     * @param cap the most decoded bytes read from any one content stream
+     * @param topCount how many of the costliest pages to keep
+     */
+    ContentProfiler(long cap, int topCount)
+    {
+        this.cap = cap;
+        this.topCount = topCount;
+    }
+
+    /**
+     * Profiles the page's Contents entry, a stream or an array of them.
+     */
+    void profilePage(int page, PDFObject contents) throws IOException
+    {
+        ContentStats stats = new ContentStats(page);
+        if (contents instanceof PDFStream) {
+            profile((PDFStream) contents, stats);
+        } else if (contents instanceof PDFArray) {
+            PDFArray array = (PDFArray) contents;
+            for (int i = 0; i < array.getLength(); ++i) {
+                PDFObject part = array.get(i);
+                if (part instanceof PDFStream)
+                    profile((PDFStream) part, stats);
+            }
+        }
+
+        ++pages;
+        totals.add(stats);
+        costliest.add(stats);
+        if (costliest.size() > topCount)
+            costliest.poll();
+    }
+
+    private void profile(PDFStream stream, ContentStats stats) throws IOException
+    {
+        try (InputStream in = stream.getFilteredStream()) {
+            profile(in, stats);
+        }
+    }
+
+    /**
+     * Tokenizes one content stream into the stats. The parts of a page's
+     * contents are separate streams that split only between tokens.
+     */
+    void profile(InputStream in, ContentStats stats) throws IOException
+    {
+        state = NORMAL;
+        long total = 0;
+        while (total < cap) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, cap - total));
+            if (read < 0)
+                break;
+            scan(buffer, read, stats);
+            total += read;
+        }
+        if (total >= cap && in.read() >= 0)
+            stats.setTruncated();
+        finish(stats);
+        stats.addBytes(total);
+    }
+
+    private void scan(byte[] data, int length, ContentStats stats)
+    {
+        int i = 0;
+        while (i < length) {
+            int b = data[i] & 0xFF;
+            switch (state) {
+                case NORMAL:
+                    ++i;
+                    byte type = CLASSES[b];
+                    if (type == WHITE) {
+                        while (i < length && CLASSES[data[i] & 0xFF] == WHITE)
+                            ++i;
+                        break;
+                    }
+                    if (type == REGULAR) {
+                        state = TOKEN;
+                        token = b;
+                        tokenLength = 1;
+                        tokenIsNumber = (b >= '0' && b <= '9') || b == '+' || b == '-' || b == '.';
+                    } else if (b == '/') {
+                        state = NAME;
+                        stats.addOperands(1);
+                    } else if (b == '(') {
+                        state = STRING;
+                        depth = 1;
+                        escape = false;
+                        stats.addOperands(1);
+                    } else if (b == '<') {
+                        state = LESS_THAN;
+                    } else if (b == '%') {
+                        state = COMMENT;
+                    }
+                    // brackets and braces only group operands.
+                    break;
+                case TOKEN:
+                    while (CLASSES[b] == REGULAR) {
+                        if (++tokenLength <= 4)
+                            token = token << 8 | b;
+                        if (++i == length)
+                            break;
+                        b = data[i] & 0xFF;
+                    }
+                    if (i < length)
+                        endToken(stats); // and look at this byte again
+                    break;
+                case NAME:
+                    while (i < length && CLASSES[data[i] & 0xFF] == REGULAR)
+                        ++i;
+                    if (i < length)
+                        state = NORMAL;
+                    break;
+                case STRING:
+                    ++i;
+                    if (escape)
+                        escape = false;
+                    else if (b == '\\')
+                        escape = true;
+                    else if (b == '(')
+                        ++depth;
+                    else if (b == ')' && --depth == 0)
+                        state = NORMAL;
+                    break;
+                case LESS_THAN:
+                    if (b == '<') {
+                        ++i; // a dictionary, whose keys and values are counted as they come
+                        state = NORMAL;
+                    } else {
+                        state = HEX;
+                        stats.addOperands(1);
+                    }
+                    break;
+                case HEX:
+                    ++i;
+                    if (b == '>')
+                        state = NORMAL;
+                    break;
+                case COMMENT:
+                    ++i;
+                    if (b == '\r' || b == '\n')
+                        state = NORMAL;
+                    break;
+                case INLINE_DATA:
+                    i = scanInlineData(data, i, length, stats);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Skips inline image data up to the whitespace, EI and whitespace or
+     * delimiter that end it.
+     *
+     * @return where to carry on scanning.
+     */
+    private int scanInlineData(byte[] data, int i, int length, ContentStats stats)
+    {
+        while (i < length) {
+            int b = data[i] & 0xFF;
+            if (inlineMatch == 3) {
+                if (CLASSES[b] != REGULAR) {
+                    endInlineImage(stats);
+                    return i;
+                }
+                inlineMatch = 0;
+            }
+            ++i;
+            ++inlineBytes;
+            if (CLASSES[b] == WHITE)
+                inlineMatch = 1;
+            else if (b == 'E' && inlineMatch == 1)
+                inlineMatch = 2;
+            else if (b == 'I' && inlineMatch == 2)
+                inlineMatch = 3;
+            else
+                inlineMatch = 0;
+        }
+        return i;
+    }
+
+    private void endInlineImage(ContentStats stats)
+    {
+        // the data ends before the whitespace and EI that were counted with it.
+        stats.addInlineImageBytes(Math.max(inlineBytes - 3, 0));
+        stats.addOperator(KEY_EI);
+        state = NORMAL;
+    }
+
+    private void endToken(ContentStats stats)
+    {
+        state = NORMAL;
+        int key = tokenLength > 4 ? ContentStats.OTHER : token;
+        if (tokenIsNumber || key == KEY_TRUE || key == KEY_NULL || (tokenLength == 5 && token == KEY_FALS)) {
+            stats.addOperands(1);
+            return;
+        }
+        stats.addOperator(key);
+        if (key == KEY_ID) {
+            // one whitespace byte separates ID from the data, and is not part of it.
+            state = INLINE_DATA;
+            inlineMatch = 0;
+            inlineBytes = -1;
+        }
+    }
+
+    private void finish(ContentStats stats)
+    {
+        if (state == TOKEN)
+            endToken(stats);
+        else if (state == INLINE_DATA && inlineMatch == 3)
+            endInlineImage(stats);
+        state = NORMAL;
+    }
+
+    /**
+     * @return the counts over every page profiled.
+     */
+    ContentStats getTotals()
+    {
+        return totals;
+    }
+
+    /**
+     * @return the costliest pages, most expensive first.
+     */
+    List<ContentStats> getCostliestPages()
+    {
+        List<ContentStats> pagesByCost = new ArrayList<>(costliest);
+        pagesByCost.sort(Comparator.comparingLong(ContentStats::getCost).reversed());
+        return pagesByCost;
+    }
+
+    void print(PrintStream out)
+    {
+        out.println(String.format("Content streams (%,d pages, %,d bytes decoded):", pages, totals.getBytes()));
+        out.println(totals);
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, Long> op : totals.getHistogram().entrySet()) {
+            if (line.length() > 0)
+                line.append(", ");
+            line.append(op.getKey()).append(' ').append(String.format("%,d", op.getValue()));
+        }
+        out.println(String.format("%36s:\t%s", "Operators", line));
+        out.println("Costliest pages:");
+        for (ContentStats page : getCostliestPages())
+            out.println(page);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * ContentStats
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What one page's content streams (or a whole document's) ask a renderer to
+ * do: how often each operator occurs, and from that the path segments and
+ * text-showing operations, plus the inline images and their bytes.
+ *
+ * Operators are kept in a small open-addressed table keyed by their bytes
+ * packed into an int, so counting one allocates nothing.
+ */
+final class ContentStats {
+
+    /** the key every token longer than four bytes is counted under; no real operator is that long. */
+    static final int OTHER = -1;
+
+    private static final int INITIAL_SLOTS = 128;
+
+    private final int page;
+    private int[] keys = new int[INITIAL_SLOTS];
+    private long[] counts = new long[INITIAL_SLOTS];
+    private int used;
+    private long bytes;
+    private long operators;
+    private long operands;
+    private long inlineImageBytes;
+    private boolean truncated;
+
+    /**
+     * @param page the page number counting from 1, or 0 for a document total.
+     */
+    ContentStats(int page)
+    {
+        this.page = page;
+    }
+
+    /**
+     * @return the key the operator's bytes pack into.
+     */
+    static int key(String operator)
+    {
+        byte[] op = operator.getBytes(StandardCharsets.ISO_8859_1);
+        int key = 0;
+        for (byte b : op)
+            key = key << 8 | (b & 0xFF);
+        return op.length > 4 ? OTHER : key;
+    }
+
+    private static String operator(int key)
+    {
+        if (key == OTHER)
+            return "(other)";
+        StringBuilder op = new StringBuilder(4);
+        for (int shift = 24; shift >= 0; shift -= 8)
+            if ((key >>> shift & 0xFF) != 0)
+                op.append((char) (key >>> shift & 0xFF));
+        return op.toString();
+    }
+
+    void addOperator(int key)
+    {
+        addOperator(key, 1);
+        ++operators;
+    }
+
+    private void addOperator(int key, long count)
+    {
+        int mask = keys.length - 1;
+        int slot = (key * 0x9E3779B9) >>> 16 & mask;
+        while (keys[slot] != 0 && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            if (++used * 2 > keys.length)
+                grow();
+            // the slot may have moved; look it up again.
+            addOperator(key, count);
+            return;
+        }
+        counts[slot] += count;
+    }
+
+    private void grow()
+    {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        used = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] == 0)
+                continue;
+            int mask = keys.length - 1;
+            int slot = (oldKeys[i] * 0x9E3779B9) >>> 16 & mask;
+            while (keys[slot] != 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+            ++used;
+        }
+    }
+
+    void addOperands(long count)
+    {
+        operands += count;
+    }
+
+    void addBytes(long count)
+    {
+        bytes += count;
+    }
+
+    void addInlineImageBytes(long count)
+    {
+        inlineImageBytes += count;
+    }
+
+    void setTruncated()
+    {
+        truncated = true;
+    }
+
+    /**
+     * Adds another page's counts to these.
+     */
+    void add(ContentStats other)
+    {
+        for (int i = 0; i < other.keys.length; ++i)
+            if (other.keys[i] != 0)
+                addOperator(other.keys[i], other.counts[i]);
+        bytes += other.bytes;
+        operators += other.operators;
+        operands += other.operands;
+        inlineImageBytes += other.inlineImageBytes;
+        truncated |= other.truncated;
+    }
+
+    /**
+     * @return how many times the operator occurs.
+     */
+    long count(String operator)
+    {
+        return count(key(operator));
+    }
+
+    private long count(int key)
+    {
+        int mask = keys.length - 1;
+        int slot = (key * 0x9E3779B9) >>> 16 & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key)
+                return counts[slot];
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the page number counting from 1, or 0 for a document total.
+     */
+    int getPage()
+    {
+        return page;
+    }
+
+    /**
+     * @return the decoded content bytes read.
+     */
+    long getBytes()
+    {
+        return bytes;
+    }
+
+    long getOperators()
+    {
+        return operators;
+    }
+
+    long getOperands()
+    {
+        return operands;
+    }
+
+    /**
+     * @return the straight and curved segments drawn; a rectangle is four.
+     */
+    long getPathSegments()
+    {
+        return count("l") + count("c") + count("v") + count("y") + count("h") + 4 * count("re");
+    }
+
+    /**
+     * @return the Tj, TJ, ' and " operations.
+     */
+    long getTextShows()
+    {
+        return count("Tj") + count("TJ") + count("'") + count("\"");
+    }
+
+    long getInlineImages()
+    {
+        return count("BI");
+    }
+
+    long getInlineImageBytes()
+    {
+        return inlineImageBytes;
+    }
+
+    /**
+     * @return whether the decode cap stopped the count short.
+     */
+    boolean isTruncated()
+    {
+        return truncated;
+    }
+
+    /**
+     * Ranks pages by how much work they give a renderer: every operator,
+     * with path segments counted again as they dominate rasterization.
+     */
+    long getCost()
+    {
+        return operators + getPathSegments();
+    }
+
+    /**
+     * @return each operator and how often it occurs, most frequent first.
+     */
+    Map<String, Long> getHistogram()
+    {
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < keys.length; ++i)
+            if (keys[i] != 0)
+                slots.add(i);
+        slots.sort((a, b) -> Long.compare(counts[b], counts[a]));
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int slot : slots)
+            histogram.put(operator(keys[slot]), counts[slot]);
+        return histogram;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%36s:\t%,8d ops, %,d path segments, %,d text shows, %,d inline images (%,d bytes)%s",
+                page > 0 ? "Page " + page : "Content", operators, getPathSegments(), getTextShows(),
+                getInlineImages(), inlineImageBytes, truncated ? ", truncated" : "");
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * DominatorTree
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.util.Arrays;
+
+/**
+ * Computes the immediate dominators of a ReferenceGraph with the
+ * Lengauer-Tarjan algorithm, and from them the retained size of every object:
+ * the bytes that would be freed if nothing else referred to it.
+ *
+ * Everything is held in int arrays and both the depth-first search and the
+ * path compression are iterative, so deep object graphs cannot overflow the
+ * stack. Objects that cannot be reached from the root are treated as children
+ * of the root, so each of them only retains itself and what hangs off it.
+ */
+final class DominatorTree {
+
+    private static final int NONE = -1;
+
+    private final int[] idom;
+    private final int[] vertex; // depth-first order; a node's dominators come before it
+    private final int reached;
+    private final long[] retained;
+
+    private DominatorTree(int[] idom, int[] vertex, int reached, long[] retained)
+    {
+        this.idom = idom;
+        this.vertex = vertex;
+        this.reached = reached;
+        this.retained = retained;
+    }
+
+    static DominatorTree compute(ReferenceGraph graph)
+    {
+        final int n = graph.getNodeCount();
+        final int[] succOffsets = graph.getSuccOffsets();
+        final int[] succ = graph.getSucc();
+        final int[] predOffsets = graph.getPredOffsets();
+        final int[] pred = graph.getPred();
+
+        int[] dfnum = new int[n];
+        int[] vertex = new int[n];
+        int[] parent = new int[n];
+        Arrays.fill(dfnum, NONE);
+        Arrays.fill(parent, NONE);
+
+        // depth-first numbering from the root, then from anything left unreached.
+        int count = 0;
+        int[] stack = new int[n];
+        int[] edgeCursor = new int[n]; // reused below as the path-compression stack
+        for (int start = 0; start < n; ++start) {
+            if (dfnum[start] != NONE || (start != ReferenceGraph.ROOT && graph.getSize(start) == 0))
+                continue;
+            if (start != ReferenceGraph.ROOT)
+                parent[start] = ReferenceGraph.ROOT;
+            int top = 0;
+            stack[top++] = start;
+            dfnum[start] = count;
+            vertex[count++] = start;
+            edgeCursor[start] = succOffsets[start];
+            while (top > 0) {
+                int v = stack[top - 1];
+                if (edgeCursor[v] == succOffsets[v + 1]) {
+                    --top;
+                    continue;
+                }
+                int w = succ[edgeCursor[v]++];
+                if (dfnum[w] == NONE) {
+                    dfnum[w] = count;
+                    vertex[count++] = w;
+                    parent[w] = v;
+                    edgeCursor[w] = succOffsets[w];
+                    stack[top++] = w;
+                }
+            }
+        }
+
+        int[] semi = new int[n];
+        int[] ancestor = new int[n];
+        int[] best = new int[n];
+        int[] idom = new int[n];
+        int[] samedom = new int[n];
+        int[] bucketHead = new int[n];
+        int[] bucketNext = new int[n];
+        Arrays.fill(ancestor, NONE);
+        Arrays.fill(idom, NONE);
+        Arrays.fill(samedom, NONE);
+        Arrays.fill(bucketHead, NONE);
+        int[] path = edgeCursor;
+
+        for (int i = count - 1; i > 0; --i) {
+            int node = vertex[i];
+            int p = parent[node];
+            int s = p;
+            for (int e = predOffsets[node]; e < predOffsets[node + 1]; ++e) {
+                int v = pred[e];
+                if (dfnum[v] == NONE)
+                    continue;
+                int candidate = (dfnum[v] <= dfnum[node]) ? v
+                        : semi[lowestSemiAncestor(v, ancestor, best, semi, dfnum, path)];
+                if (dfnum[candidate] < dfnum[s])
+                    s = candidate;
+            }
+            semi[node] = s;
+            bucketNext[node] = bucketHead[s];
+            bucketHead[s] = node;
+
+            ancestor[node] = p;
+            best[node] = node;
+
+            for (int v = bucketHead[p]; v != NONE; v = bucketNext[v]) {
+                int y = lowestSemiAncestor(v, ancestor, best, semi, dfnum, path);
+                if (semi[y] == semi[v])
+                    idom[v] = p;
+                else
+                    samedom[v] = y;
+            }
+            bucketHead[p] = NONE;
+        }
+        for (int i = 1; i < count; ++i) {
+            int node = vertex[i];
+            if (samedom[node] != NONE)
+                idom[node] = idom[samedom[node]];
+        }
+
+        // children come after their dominators in depth-first order, so one reverse pass sums them up.
+        long[] retained = new long[n];
+        for (int i = 0; i < count; ++i)
+            retained[vertex[i]] = graph.getSize(vertex[i]);
+        for (int i = count - 1; i > 0; --i)
+            retained[idom[vertex[i]]] += retained[vertex[i]];
+
+        return new DominatorTree(idom, vertex, count, retained);
+    }
+
+    /**
+     * The ancestor of v in the forest built so far with the lowest-numbered
+     * semidominator, compressing the path as it goes.
+     */
+    private static int lowestSemiAncestor(int v, int[] ancestor, int[] best, int[] semi, int[] dfnum, int[] path)
+    {
+        int top = 0;
+        int u = v;
+        while (ancestor[ancestor[u]] != NONE) {
+            path[top++] = u;
+            u = ancestor[u];
+        }
+        while (top > 0) {
+            int w = path[--top];
+            int a = ancestor[w];
+            int b = best[a];
+            ancestor[w] = ancestor[a];
+            if (dfnum[semi[b]] < dfnum[semi[best[w]]])
+                best[w] = b;
+        }
+        return best[v];
+    }
+
+    /**
+     * @return the immediate dominator of the object, or -1 for the root and unused object numbers.
+     */
+    int getIdom(int id)
+    {
+        return idom[id];
+    }
+
+    long getRetained(int id)
+    {
+        return retained[id];
+    }
+
+    /**
+     * @return the object at this position in depth-first order; dominators come before the objects they dominate.
+     */
+    int getVertex(int index)
+    {
+        return vertex[index];
+    }
+
+    /**
+     * @return the number of objects in the tree, including the root.
+     */
+    int getReached()
+    {
+        return reached;
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * DuplicateFinder
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Finds image, font program and embedded file streams whose payloads are
+ * byte-for-byte the same, and reports how many bytes removing the extra
+ * copies would reclaim.
+ *
+ * Streams are compared on their raw (still encoded) bytes. The library is
+ * read from one thread only: each stream is read into one of a fixed pool of
+ * reused buffers and the hashing is handed to worker threads, so reading the
+ * next stream overlaps hashing the previous ones. Streams larger than a pool
+ * buffer may grow to, whether by their /Length or by what reading them
+ * finds, are hashed as they are read instead. Two streams match when their
+ * length and both a CRC-32C and a CRC-32 of their bytes agree, and so do
+ * the dictionary entries that decide how those bytes are decoded and drawn:
+ * the same image data at another size, depth, color space or soft mask is
+ * not a copy that could be shared.
+ */
+final class DuplicateFinder implements AutoCloseable {
+
+    static final int MAX_BUFFERED_STREAM = 4 * 1024 * 1024;
+
+    /** the stream dictionary entries two copies must agree on, besides their bytes. */
+    private static final String[] DECODING_KEYS = {
+            "Filter", "DecodeParms", "Subtype", "Length1", "Length2", "Length3",
+            "Width", "Height", "BitsPerComponent", "ColorSpace", "Decode", "ImageMask", "Mask", "SMask",
+            "SMaskInData", "Matte", "Intent", "Interpolate"};
+
+    private static final class Key {
+        final long length;
+        final long hash;
+        final long attributes;
+
+        Key(long length, long hash, long attributes)
+        {
+            this.length = length;
+            this.hash = hash;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Key && ((Key) o).length == length && ((Key) o).hash == hash
+                    && ((Key) o).attributes == attributes;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(hash) * 31 + Long.hashCode(attributes);
+        }
+    }
+
+    private static final class Group {
+        final AuditCategory category;
+        final long size;
+        final int firstId;
+        int copies;
+
+        Group(AuditCategory category, long size, int firstId)
+        {
+            this.category = category;
+            this.size = size;
+            this.firstId = firstId;
+        }
+    }
+
+    private final ExecutorService workers;
+    private final BlockingQueue<byte[]> buffers;
+    private final byte[] streamingBuffer = new byte[StreamLengthCounter.BUFFER_SIZE];
+    private final BitSet seen = new BitSet();
+    private final Map<Key, Group> groups = new HashMap<>();
+    /** the objects found to copy one added before them, guarded by groups. */
+    private final BitSet extraCopyIds = new BitSet();
+    private final Phaser pending = new Phaser(1);
+
+    /**
+     * @param threads the number of threads hashing stream bodies.
+     */
+    DuplicateFinder(int threads)
+    {
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "DuplicateFinder");
+            t.setDaemon(true);
+            return t;
+        });
+        buffers = new ArrayBlockingQueue<>(threads * 2);
+        for (int i = threads * 2; i > 0; --i)
+            buffers.add(new byte[StreamLengthCounter.BUFFER_SIZE]);
+    }
+
+    /**
+     * Reads the stream's raw bytes and queues them for hashing. Each object is
+     * only considered once, however often it is added.
+     *
+     * @param id the stream's object number.
+     * @param category the category the stream's bytes are counted under.
+     * @param size the bytes the whole object takes in the file.
+     */
+    void add(int id, AuditCategory category, long size, PDFStream stream) throws IOException, InterruptedException
+    {
+        if (seen.get(id))
+            return;
+        seen.set(id);
+
+        int length = stream.getLength();
+        if (length <= 0)
+            return;
+        final long attributes = attributes(stream.getDict());
+        if (length > MAX_BUFFERED_STREAM) {
+            Key key;
+            try (InputStream in = stream.getUnfilteredStream()) {
+                key = streamedKey(in, streamingBuffer, 0, attributes);
+            }
+            addHash(key, id, category, size);
+            return;
+        }
+
+        byte[] buffer = buffers.take();
+        int total = 0;
+        Key streamed = null;
+        try (InputStream in = stream.getUnfilteredStream()) {
+            int read;
+            do {
+                if (total == buffer.length)
+                    buffer = Arrays.copyOf(buffer, Math.min(Math.max(buffer.length * 2, length), MAX_BUFFERED_STREAM + 1));
+                read = in.read(buffer, total, buffer.length - total);
+                if (read > 0)
+                    total += read;
+            } while (read >= 0 && total <= MAX_BUFFERED_STREAM);
+            // the stream is longer than its /Length said; hash all of it, not just what fits the buffer.
+            if (total > MAX_BUFFERED_STREAM)
+                streamed = streamedKey(in, buffer, total, attributes);
+        } catch (IOException e) {
+            release(buffer);
+            throw e;
+        }
+        if (streamed != null) {
+            release(buffer);
+            addHash(streamed, id, category, size);
+            return;
+        }
+
+        final byte[] data = buffer;
+        final int dataLength = total;
+        pending.register();
+        workers.execute(() -> {
+            try {
+                CRC32C crc32c = new CRC32C();
+                CRC32 crc32 = new CRC32();
+                crc32c.update(data, 0, dataLength);
+                crc32.update(data, 0, dataLength);
+                addHash(new Key(dataLength, crc32c.getValue() << 32 | crc32.getValue(), attributes), id, category,
+                        size);
+            } finally {
+                release(data);
+                pending.arriveAndDeregister();
+            }
+        });
+    }
+
+    /**
+     * Hashes the bytes already read into prefix and then the rest of the
+     * stream as it is read, on the calling thread.
+     */
+    private Key streamedKey(InputStream in, byte[] prefix, int prefixLength, long attributes) throws IOException
+    {
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+        crc32c.update(prefix, 0, prefixLength);
+        crc32.update(prefix, 0, prefixLength);
+        long total = prefixLength;
+        int read;
+        while ((read = in.read(streamingBuffer)) >= 0) {
+            crc32c.update(streamingBuffer, 0, read);
+            crc32.update(streamingBuffer, 0, read);
+            total += read;
+        }
+        return new Key(total, crc32c.getValue() << 32 | crc32.getValue(), attributes);
+    }
+
+    /**
+     * Hashes the stream dictionary's decoding and rendering entries. Indirect
+     * values, such as a soft mask or a shared color space, count by their
+     * object number: copies that point at different objects are not merged.
+     */
+    private static long attributes(PDFDict dict)
+    {
+        StringBuilder description = new StringBuilder();
+        for (String key : DECODING_KEYS) {
+            if (dict.contains(key)) {
+                description.append('/').append(key).append(' ');
+                describe(dict.get(key), description);
+            }
+        }
+        byte[] bytes = description.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+        crc32c.update(bytes, 0, bytes.length);
+        crc32.update(bytes, 0, bytes.length);
+        return crc32c.getValue() << 32 | crc32.getValue();
+    }
+
+    private static void describe(PDFObject value, StringBuilder description)
+    {
+        if (value == null) {
+            description.append("null");
+        } else if (value.getIndirect()) {
+            description.append(value.getID()).append(' ').append(value.getGeneration()).append(" R");
+        } else if (value instanceof PDFName) {
+            description.append('/').append(((PDFName) value).getValue());
+        } else if (value instanceof PDFInteger) {
+            description.append(((PDFInteger) value).getValue());
+        } else if (value instanceof PDFReal) {
+            description.append(((PDFReal) value).getValue());
+        } else if (value instanceof PDFBoolean) {
+            description.append(((PDFBoolean) value).getValue());
+        } else if (value instanceof PDFString) {
+            description.append('<');
+            for (byte b : ((PDFString) value).getBytes())
+                description.append(String.format("%02x", b & 0xFF));
+            description.append('>');
+        } else if (value instanceof PDFArray) {
+            PDFArray array = (PDFArray) value;
+            description.append('[');
+            for (int i = 0; i < array.getLength(); ++i) {
+                description.append(' ');
+                describe(array.get(i), description);
+            }
+            description.append(" ]");
+        } else if (value instanceof PDFDict) {
+            // keys in a fixed order, so equal dictionaries describe alike however they were written.
+            PDFDict dict = (PDFDict) value;
+            TreeMap<String, PDFObject> entries = new TreeMap<>();
+            for (PDFObject key : dict.getKeys())
+                entries.put(((PDFName) key).getValue(), dict.get((PDFName) key));
+            description.append("<<");
+            for (Map.Entry<String, PDFObject> entry : entries.entrySet()) {
+                description.append(" /").append(entry.getKey()).append(' ');
+                describe(entry.getValue(), description);
+            }
+            description.append(" >>");
+        } else {
+            description.append(value.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Returns a buffer to the pool. One that grew for a large stream is
+     * replaced with a default-sized one, so the pool does not hold on to
+     * several buffers of up to MAX_BUFFERED_STREAM bytes each.
+     */
+    private void release(byte[] buffer)
+    {
+        buffers.add(buffer.length == StreamLengthCounter.BUFFER_SIZE ? buffer : new byte[StreamLengthCounter.BUFFER_SIZE]);
+    }
+
+    private void addHash(Key key, int id, AuditCategory category, long size)
+    {
+        synchronized (groups) {
+            Group group = groups.get(key);
+            if (group == null)
+                groups.put(key, group = new Group(category, size, id));
+            else
+                extraCopyIds.set(id);
+            ++group.copies;
+        }
+    }
+
+    /**
+     * Waits for the queued streams to be hashed and summarizes the duplicates.
+     */
+    DuplicateReport finish()
+    {
+        pending.arriveAndAwaitAdvance();
+        long[] reclaimable = new long[AuditCategory.VALUES.length];
+        int[] extraCopies = new int[AuditCategory.VALUES.length];
+        List<DuplicateReport.Group> duplicated = new ArrayList<>();
+        BitSet extraIds;
+        synchronized (groups) {
+            extraIds = (BitSet) extraCopyIds.clone();
+            for (Group group : groups.values()) {
+                if (group.copies < 2)
+                    continue;
+                reclaimable[group.category.ordinal()] += group.size * (group.copies - 1);
+                extraCopies[group.category.ordinal()] += group.copies - 1;
+                duplicated.add(new DuplicateReport.Group(group.category, group.firstId, group.copies, group.size));
+            }
+        }
+        duplicated.sort((a, b) -> Long.compare(b.getReclaimable(), a.getReclaimable()));
+        return new DuplicateReport(reclaimable, extraCopies, duplicated, extraIds);
+    }
+
+    @Override
+    public void close()
+    {
+        workers.shutdownNow();
+    }
+
+    /**
+     * The result of a duplicate search.
+     */
+    static final class DuplicateReport {
+
+        static final class Group {
+            private final AuditCategory category;
+            private final int firstId;
+            private final int copies;
+            private final long size;
+
+            Group(AuditCategory category, int firstId, int copies, long size)
+            {
+                this.category = category;
+                this.firstId = firstId;
+                this.copies = copies;
+                this.size = size;
+            }
+
+            long getReclaimable()
+            {
+                return size * (copies - 1);
+            }
+        }
+
+        private static final int PRINTED_GROUPS = 20;
+
+        private final long[] reclaimable;
+        private final int[] extraCopies;
+        private final List<Group> groups;
+        private final BitSet extraCopyIds;
+
+        DuplicateReport(long[] reclaimable, int[] extraCopies, List<Group> groups, BitSet extraCopyIds)
+        {
+            this.reclaimable = reclaimable;
+            this.extraCopies = extraCopies;
+            this.groups = groups;
+            this.extraCopyIds = extraCopyIds;
+        }
+
+        /**
+         * @return whether the object is one of the extra copies whose bytes the report counts as reclaimable.
+         */
+        boolean isExtraCopy(int id)
+        {
+            return extraCopyIds.get(id);
+        }
+
+        /**
+         * @return the bytes that removing the extra copies in this category would save.
+         */
+        long getReclaimable(AuditCategory category)
+        {
+            return reclaimable[category.ordinal()];
+        }
+
+        long getTotalReclaimable()
+        {
+            long total = 0;
+            for (long value : reclaimable)
+                total += value;
+            return total;
+        }
+
+        void print(PrintStream out)
+        {
+            out.println("Duplicate streams:");
+            for (final AuditCategory cat : AuditCategory.VALUES) {
+                if (extraCopies[cat.ordinal()] > 0)
+                    out.println(String.format("%36s:\t%,8d reclaimable in %,d extra copies", cat.label,
+                            reclaimable[cat.ordinal()], extraCopies[cat.ordinal()]));
+            }
+            for (int i = 0; i < groups.size() && i < PRINTED_GROUPS; ++i) {
+                Group group = groups.get(i);
+                out.println(String.format("%36s:\t%,8d bytes x %d copies\t%s", "Object " + group.firstId,
+                        group.size, group.copies, group.category.label));
+            }
+        }
+    }
+}
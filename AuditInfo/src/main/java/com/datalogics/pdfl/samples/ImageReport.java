@@ -0,0 +1,332 @@
+/*
+ * ImageReport
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.*;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * How well each image XObject in the document is compressed, and which ones
+ * are worth recompressing.
+ *
+ * Everything comes from the image dictionary and the stream's encoded
+ * length; no image data is decoded. The decoded size is estimated from the
+ * width, height, bits per component and colour space. An image is a
+ * recompression candidate when it has no compression filter, when only ASCII
+ * filters inflate it, or when a lossless filter barely compresses it, which
+ * suggests a continuous-tone photo better served by DCT. The savings assume
+ * DCT reaches about PHOTO_RATIO:1 on photos and lossless coding about 2:1
+ * on everything else.
+ */
+final class ImageReport {
+
+    static final int PHOTO_RATIO = 10;
+    static final int LOSSLESS_RATIO = 2;
+    static final long MIN_CANDIDATE_PIXELS = 64 * 64;
+
+    private static final int PRINTED_IMAGES = 20;
+
+    static final class Image {
+        private final int id;
+        private final String filters;
+        private final int width;
+        private final int height;
+        private final int bitsPerComponent;
+        private final String colorSpace;
+        private final long encoded;
+        private final long decoded;
+        private String candidate;
+        private long savings;
+
+        Image(int id, String filters, int width, int height, int bitsPerComponent, String colorSpace,
+              long encoded, long decoded)
+        {
+            this.id = id;
+            this.filters = filters;
+            this.width = width;
+            this.height = height;
+            this.bitsPerComponent = bitsPerComponent;
+            this.colorSpace = colorSpace;
+            this.encoded = encoded;
+            this.decoded = decoded;
+        }
+
+        int getId()
+        {
+            return id;
+        }
+
+        /**
+         * @return the filter chain in decoding order, joined with '+', or "none".
+         */
+        String getFilters()
+        {
+            return filters;
+        }
+
+        int getWidth()
+        {
+            return width;
+        }
+
+        int getHeight()
+        {
+            return height;
+        }
+
+        /**
+         * @return the bits per component, or -1 if the dictionary does not say.
+         */
+        int getBitsPerComponent()
+        {
+            return bitsPerComponent;
+        }
+
+        String getColorSpace()
+        {
+            return colorSpace;
+        }
+
+        long getEncoded()
+        {
+            return encoded;
+        }
+
+        /**
+         * @return the estimated decoded size, or -1 if the dictionary does not give enough to estimate it.
+         */
+        long getDecoded()
+        {
+            return decoded;
+        }
+
+        /**
+         * @return decoded bytes per encoded byte, or 0 if unknown.
+         */
+        double getRatio()
+        {
+            return decoded > 0 && encoded > 0 ? (double) decoded / encoded : 0;
+        }
+
+        /**
+         * @return why the image is worth recompressing, or null if it is not.
+         */
+        String getCandidate()
+        {
+            return candidate;
+        }
+
+        long getSavings()
+        {
+            return savings;
+        }
+    }
+
+    private final List<Image> images = new ArrayList<>();
+    private long totalEncoded;
+    private long totalDecoded;
+    private long totalSavings;
+    private int candidates;
+
+    /**
+     * Records one image XObject.
+     *
+     * @param dict the image stream's dictionary
+     * @param encoded the stream's encoded length
+     */
+    void add(int id, PDFDict dict, long encoded)
+    {
+        List<String> filters = filterNames(dict);
+        int width = intValue(dict, "Width");
+        int height = intValue(dict, "Height");
+        int bpc;
+        int components;
+        String colorSpace;
+        PDFObject imageMask = dict.contains("ImageMask") ? dict.get("ImageMask") : null;
+        if (imageMask instanceof PDFBoolean && ((PDFBoolean) imageMask).getValue()) {
+            bpc = 1;
+            components = 1;
+            colorSpace = "ImageMask";
+        } else {
+            bpc = intValue(dict, "BitsPerComponent");
+            PDFObject cs = dict.contains("ColorSpace") ? dict.get("ColorSpace") : null;
+            colorSpace = family(cs);
+            components = components(cs);
+        }
+
+        long decoded = -1;
+        if (width > 0 && height > 0 && bpc > 0 && components > 0)
+            decoded = ((long) width * components * bpc + 7) / 8 * height;
+
+        Image image = new Image(id, filters.isEmpty() ? "none" : String.join("+", filters), width, height, bpc,
+                colorSpace, encoded, decoded);
+        assess(image, filters, components);
+        images.add(image);
+
+        totalEncoded += encoded;
+        if (decoded > 0)
+            totalDecoded += decoded;
+        if (image.candidate != null) {
+            ++candidates;
+            totalSavings += image.savings;
+        }
+    }
+
+    private static void assess(Image image, List<String> filters, int components)
+    {
+        if (image.decoded <= 0 || (long) image.width * image.height < MIN_CANDIDATE_PIXELS)
+            return;
+
+        boolean ascii = false;
+        String compression = null;
+        for (String filter : filters) {
+            if (filter.equals("ASCIIHexDecode") || filter.equals("ASCII85Decode") || filter.equals("AHx") || filter.equals("A85"))
+                ascii = true;
+            else
+                compression = filter;
+        }
+        boolean photo = image.bitsPerComponent >= 8 && components >= 1 && !image.colorSpace.equals("Indexed");
+
+        long target = image.encoded;
+        String reason = null;
+        if (compression == null) {
+            target = photo ? image.decoded / PHOTO_RATIO : image.decoded / LOSSLESS_RATIO;
+            reason = photo ? "uncompressed photo" : "uncompressed";
+        } else if (photo && isLossless(compression) && image.getRatio() < LOSSLESS_RATIO) {
+            target = image.decoded / PHOTO_RATIO;
+            reason = compression + " photo";
+        } else if (ascii) {
+            // the binary data under the ASCII encoding: two hex digits, or five base-85 digits for four bytes.
+            target = filters.get(0).startsWith("ASCIIHex") || filters.get(0).equals("AHx")
+                    ? image.encoded / 2 : image.encoded * 4 / 5;
+            reason = "ASCII encoded";
+        }
+
+        if (reason != null && target < image.encoded) {
+            image.candidate = reason;
+            image.savings = image.encoded - target;
+        }
+    }
+
+    private static boolean isLossless(String filter)
+    {
+        return filter.equals("FlateDecode") || filter.equals("Fl") || filter.equals("LZWDecode") || filter.equals("LZW")
+                || filter.equals("RunLengthDecode") || filter.equals("RL");
+    }
+
+    private static List<String> filterNames(PDFDict dict)
+    {
+        List<String> names = new ArrayList<>();
+        PDFObject filter = dict.contains("Filter") ? dict.get("Filter") : null;
+        if (filter instanceof PDFName) {
+            names.add(((PDFName) filter).getValue());
+        } else if (filter instanceof PDFArray) {
+            PDFArray array = (PDFArray) filter;
+            for (int i = 0; i < array.getLength(); ++i)
+                if (array.get(i) instanceof PDFName)
+                    names.add(((PDFName) array.get(i)).getValue());
+        }
+        return names;
+    }
+
+    private static int intValue(PDFDict dict, String key)
+    {
+        if (!dict.contains(key))
+            return -1;
+        PDFObject value = dict.get(key);
+        return value instanceof PDFInteger ? ((PDFInteger) value).getValue() : -1;
+    }
+
+    private static String family(PDFObject cs)
+    {
+        if (cs instanceof PDFName)
+            return ((PDFName) cs).getValue();
+        if (cs instanceof PDFArray && ((PDFArray) cs).getLength() > 0 && ((PDFArray) cs).get(0) instanceof PDFName)
+            return ((PDFName) ((PDFArray) cs).get(0)).getValue();
+        return "unknown";
+    }
+
+    /**
+     * @return the number of colour components the colour space has, or -1 if unknown.
+     */
+    private static int components(PDFObject cs)
+    {
+        switch (family(cs)) {
+            case "DeviceGray":
+            case "CalGray":
+            case "G":
+            case "Indexed":
+            case "I":
+            case "Separation":
+                return 1;
+            case "DeviceRGB":
+            case "CalRGB":
+            case "RGB":
+            case "Lab":
+                return 3;
+            case "DeviceCMYK":
+            case "CMYK":
+                return 4;
+            case "ICCBased": {
+                // a bare /ICCBased or /DeviceN name is malformed and has no parameters to go on.
+                if (!(cs instanceof PDFArray))
+                    return -1;
+                PDFObject profile = ((PDFArray) cs).getLength() > 1 ? ((PDFArray) cs).get(1) : null;
+                return profile instanceof PDFStream ? intValue(((PDFStream) profile).getDict(), "N") : -1;
+            }
+            case "DeviceN": {
+                if (!(cs instanceof PDFArray))
+                    return -1;
+                PDFObject names = ((PDFArray) cs).getLength() > 1 ? ((PDFArray) cs).get(1) : null;
+                return names instanceof PDFArray ? ((PDFArray) names).getLength() : -1;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return every image, the ones recompressing would save most on first.
+     */
+    List<Image> getImages()
+    {
+        images.sort(Comparator.comparingLong(Image::getSavings).reversed()
+                .thenComparing(Comparator.comparingLong(Image::getEncoded).reversed()));
+        return images;
+    }
+
+    /**
+     * @return the bytes recompressing every candidate would save, by the report's estimates.
+     */
+    long getTotalSavings()
+    {
+        return totalSavings;
+    }
+
+    void print(PrintStream out)
+    {
+        out.println(String.format("Images (%,d, %,d encoded bytes, about %,d decoded):", images.size(),
+                totalEncoded, totalDecoded));
+        out.println(String.format("%36s:\t%,8d in %,d images", "Recompression savings", totalSavings, candidates));
+        List<Image> sorted = getImages();
+        for (int i = 0; i < sorted.size() && i < PRINTED_IMAGES; ++i) {
+            Image image = sorted.get(i);
+            out.println(String.format("%36s:\t%,8d\t%dx%d %s %s bpc, %s, %,d bytes (%.1f:1)%s",
+                    "Object " + image.id, image.savings, image.width, image.height, image.colorSpace,
+                    image.bitsPerComponent > 0 ? String.valueOf(image.bitsPerComponent) : "?", image.filters,
+                    image.encoded, image.getRatio(), image.candidate != null ? ", " + image.candidate : ""));
+        }
+    }
+}
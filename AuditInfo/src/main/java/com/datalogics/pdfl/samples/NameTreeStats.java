@@ -0,0 +1,79 @@
+/*
+ * NameTreeStats
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+/**
+ * The shape of one name tree in the document's Names dictionary: how many
+ * entries it holds, how many node dictionaries hold them, how deep the
+ * nodes go, and the bytes its keys and values were counted as.
+ */
+final class NameTreeStats {
+
+    private final String name;
+    private long entries;
+    private long bytes;
+    private int nodes;
+    private int depth;
+
+    NameTreeStats(String name)
+    {
+        this.name = name;
+    }
+
+    void addEntry(long size)
+    {
+        ++entries;
+        bytes += size;
+    }
+
+    void addNode(int nodeDepth)
+    {
+        ++nodes;
+        depth = Math.max(depth, nodeDepth);
+    }
+
+    /**
+     * @return the tree's key in the Names dictionary, such as "Dests".
+     */
+    String getName()
+    {
+        return name;
+    }
+
+    long getEntries()
+    {
+        return entries;
+    }
+
+    long getBytes()
+    {
+        return bytes;
+    }
+
+    int getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * @return the number of levels of nodes; a tree with only a root is 1 deep.
+     */
+    int getDepth()
+    {
+        return depth;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%36s:\t%,8d entries, %,d nodes, depth %d", name, entries, nodes, depth);
+    }
+}
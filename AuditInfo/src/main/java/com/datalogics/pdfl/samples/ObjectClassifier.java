@@ -0,0 +1,180 @@
+/*
+ * ObjectClassifier
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.PDFDict;
+import com.datalogics.PDFL.PDFName;
+import com.datalogics.PDFL.PDFObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides what the ObjectEvaluator does with each enumerated object, from
+ * lookup tables keyed by the values of its Type and Subtype entries (or, for
+ * arrays, the colour space family name at its start). The evaluator reads
+ * those entries once per object and makes one lookup for each, instead of
+ * testing them against every category in turn.
+ *
+ * Besides the built-in categories, callers can register their own: objects
+ * matching a registered Type or Subtype value are counted under its label.
+ */
+final class ObjectClassifier {
+
+    /**
+     * What the evaluator does with a matching object.
+     */
+    enum Action {
+        /** counts the object (with or without what it refers to) under the rule's category. */
+        RECORD,
+        /** counts a form XObject and goes on into its resources and PieceInfo. */
+        FORM_XOBJECT,
+        /** counts the bytes compression saves in an object stream. */
+        OBJECT_STREAM,
+        /** counts an xref stream. */
+        XREF_STREAM,
+        /** counts a file attachment annotation's embedded file. */
+        FILE_ATTACHMENT
+    }
+
+    static final class Rule {
+        final Action action;
+        final AuditCategory category;
+        final int custom;
+        final boolean descend;
+
+        private Rule(Action action, AuditCategory category, int custom, boolean descend)
+        {
+            this.action = action;
+            this.category = category;
+            this.custom = custom;
+            this.descend = descend;
+        }
+
+        static Rule record(AuditCategory category, boolean descend)
+        {
+            return new Rule(Action.RECORD, category, -1, descend);
+        }
+
+        static Rule special(Action action)
+        {
+            return new Rule(action, null, -1, false);
+        }
+    }
+
+    private final Map<String, Rule> dictTypes = new HashMap<>();
+    private final Map<String, Rule> dictSubtypes = new HashMap<>();
+    private final Map<String, Rule> streamTypes = new HashMap<>();
+    private final Map<String, Rule> streamSubtypes = new HashMap<>();
+    private final Map<String, Rule> arrayFamilies = new HashMap<>();
+    private final List<String> customLabels = new ArrayList<>();
+
+    ObjectClassifier()
+    {
+        dictTypes.put("ExtGState", Rule.record(AuditCategory.EXT_GRAPHIC_STATES, true));
+        dictTypes.put("Font", Rule.record(AuditCategory.FONTS, true));
+        dictTypes.put("FileSpec", Rule.record(AuditCategory.EMBEDDED_FILES, true));
+
+        dictSubtypes.put("Link", Rule.record(AuditCategory.LINK_ANNOTATIONS, false)); //may need to dig deeper for full size.
+        dictSubtypes.put("FileAttachment", Rule.special(Action.FILE_ATTACHMENT));
+        dictSubtypes.put("3D", Rule.record(AuditCategory.COMMENTS_AND_3D, true));
+        final String[] markupAnnots = {"Text","FreeText","Line","Square","Circle","Polygon","PolyLine","Highlight","Underline","Squiggly","Stamp","Caret","Ink","Redact"};
+        for (String markup : markupAnnots)
+            dictSubtypes.put(markup, Rule.record(AuditCategory.COMMENTS_AND_3D, true));
+
+        streamSubtypes.put("Image", Rule.record(AuditCategory.IMAGES, true));
+        streamSubtypes.put("Form", Rule.special(Action.FORM_XOBJECT));
+        streamTypes.put("ObjStm", Rule.special(Action.OBJECT_STREAM));
+        streamTypes.put("XRef", Rule.special(Action.XREF_STREAM));
+
+        final String[] colorSpaces = {"ICCBased","Indexed","Separation","DeviceN","Lab","CalGray","CalRGB"};
+        for (String family : colorSpaces)
+            arrayFamilies.put(family, Rule.record(AuditCategory.COLOR_SPACES, true));
+    }
+
+    /**
+     * Counts objects whose Type or Subtype (for streams, their dictionary's)
+     * has the given value under a category of the caller's own. Several
+     * registrations may share a label.
+     *
+     * @param descend whether the objects they refer to are counted with them.
+     * @throws IllegalArgumentException if the value already has a category.
+     */
+    void addCategory(String label, PDFAuditor.CategoryMatch match, String value, boolean descend)
+    {
+        Map<String, Rule> table;
+        switch (match) {
+            case TYPE:
+                table = dictTypes;
+                break;
+            case SUBTYPE:
+                table = dictSubtypes;
+                break;
+            case STREAM_TYPE:
+                table = streamTypes;
+                break;
+            default:
+                table = streamSubtypes;
+                break;
+        }
+        if (table.containsKey(value))
+            throw new IllegalArgumentException(match + " " + value + " is already counted");
+
+        int custom = customLabels.indexOf(label);
+        if (custom < 0) {
+            custom = customLabels.size();
+            customLabels.add(label);
+        }
+        table.put(value, new Rule(Action.RECORD, null, custom, descend));
+    }
+
+    /**
+     * @return the labels of the registered categories, indexed by Rule.custom.
+     */
+    List<String> getCustomLabels()
+    {
+        return customLabels;
+    }
+
+    /**
+     * @return the value of the name entry, or null if it is missing or not a name.
+     */
+    static String nameOf(PDFDict dict, String key)
+    {
+        if (!dict.contains(key))
+            return null;
+        PDFObject value = dict.get(key);
+        return value instanceof PDFName ? ((PDFName) value).getValue() : null;
+    }
+
+    Rule forStream(String type, String subtype)
+    {
+        Rule rule = subtype != null ? streamSubtypes.get(subtype) : null;
+        return (rule == null && type != null) ? streamTypes.get(type) : rule;
+    }
+
+    Rule forDictType(String type)
+    {
+        return type != null ? dictTypes.get(type) : null;
+    }
+
+    Rule forDictSubtype(String subtype)
+    {
+        return subtype != null ? dictSubtypes.get(subtype) : null;
+    }
+
+    Rule forArray(String family)
+    {
+        return arrayFamilies.get(family);
+    }
+}
@@ -13,14 +13,44 @@ package com.datalogics.pdfl.samples;
 import com.datalogics.PDFL.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.function.Consumer;
 
 class ObjectEvaluator extends PDFObjectEnumProc {
 
-    private final HashSet<Integer> evaluatedObjects;
-    private final HashMap<String,Long> byteTracker;
+    private final BitSet evaluatedObjects;
+    private final long[] byteTracker;
+    private final SizeCache sizeCache;
+    private final StreamLengthCounter lengthCounter;
+    private final XRefIndex xrefIndex;
+    private ReferenceGraph referenceGraph;
+    private DuplicateFinder duplicateFinder;
+    private ImageReport imageReport;
+    private boolean collectPlanInputs;
+    private long looseObjectBytes;
+    /** embedded font programs that are not subsets, by object number, with their encoded bytes. */
+    private final Map<Integer, Long> unsubsetFontPrograms = new HashMap<>();
+    private BitSet pageCountedObjects;
+    private int[] pageStamps;
     private Boolean hasStreamXRef;
     private int highestindirectId;
+    private ObjectClassifier classifier = new ObjectClassifier();
+    private long[] customTracker = new long[0];
+
+    /**
+     * An object whose references are being walked, and the next one to visit.
+     */
+    private static final class WalkFrame {
+        PDFObject[] refs;
+        int next;
+    }
+
+    private final ArrayList<WalkFrame> framePool = new ArrayList<>();
+    private final ArrayList<NameTreeStats> nameTreeStats = new ArrayList<>();
+    private long outlineNodes;
+    private long outlineDepth;
 
     enum cosType { cosNull, Array, Boolean, Dict, Integer, Name, Real, Stream, String }
 
@@ -37,9 +67,20 @@ class ObjectEvaluator extends PDFObjectEnumProc {
         else { return cosType.cosNull; }
     }
 
-    ObjectEvaluator(HashMap<String,Long> sizeTracker)
+    /**
+     * @param sizeTracker accumulator indexed by AuditCategory ordinal.
+     * @param objectCount expected number of indirect objects, used to size the visited set up front.
+     * @param sizeCacheCapacity the number of indirect object sizes to memoize.
+     * @param maxDecodedStreamBytes the most bytes decoded from a single stream to learn its length.
+     * @param xrefIndex exact object spans read from the file, or null to estimate every size.
+     */
+    ObjectEvaluator(long[] sizeTracker, int objectCount, int sizeCacheCapacity, long maxDecodedStreamBytes,
+                    XRefIndex xrefIndex)
     {
-        evaluatedObjects = new HashSet<>();
+        this.xrefIndex = xrefIndex;
+        sizeCache = new SizeCache(sizeCacheCapacity);
+        lengthCounter = new StreamLengthCounter(maxDecodedStreamBytes);
+        evaluatedObjects = new BitSet(Math.max(objectCount, 1));
         byteTracker =sizeTracker;
         hasStreamXRef = false; //until proven otherwise;
         highestindirectId = 0;
@@ -55,34 +96,23 @@ class ObjectEvaluator extends PDFObjectEnumProc {
         return dict.contains("Subtype") && ((PDFName)dict.get("Subtype")).getValue().equals(dictType);
     }
 
-    private static boolean isObjectStream(PDFObject obj)
-    {
-        return (getObjType(obj) == cosType.Stream ) && hasType(((PDFStream)obj).getDict(),"ObjStm");
-    }
-
-    private static boolean isXRefStream(PDFObject obj)
-    {
-        return (getObjType(obj) == cosType.Stream ) && hasType(((PDFStream)obj).getDict(),"XRef");
-    }
-
     private static boolean isImageXObject(PDFObject obj)
     {
         return (getObjType(obj) == cosType.Stream ) && hasSubtype(((PDFStream)obj).getDict(),"Image");
     }
 
-    private static boolean isFormXObject(PDFObject obj)
-    {
-        return (getObjType(obj) == cosType.Stream ) && hasSubtype(((PDFStream)obj).getDict(),"Form");
-    }
-
-    private static boolean isMarkupAnnot(PDFDict dict)
+    /**
+     * Classifies objects with the given tables instead of the built-in ones.
+     *
+     * @param customTracker accumulator indexed by the classifier's custom category.
+     */
+    void classifyWith(ObjectClassifier classifier, long[] customTracker)
     {
-        final String[] markupAnnots = {"Text","FreeText","Line","Square","Circle","Polygon","PolyLine","Highlight","Underline","Squiggly","Stamp","Caret","Ink","Redact"};
-        final Set<String> markups = new HashSet<>(Arrays.asList(markupAnnots));
-        return dict.contains("Subtype") && markups.contains(((PDFName)dict.get("Subtype")).getValue());
+        this.classifier = classifier;
+        this.customTracker = customTracker;
     }
 
-    private long sizeCosArray(PDFArray array, Boolean descend)
+    private long sizeCosArray(PDFArray array, List<PDFObject> refs)
     {
         long bytesize=3; //[]
         if (array.getIndirect())
@@ -99,18 +129,16 @@ class ObjectEvaluator extends PDFObjectEnumProc {
             if(arrayElem.getIndirect()) {
                 bytesize += String.valueOf(arrayElem.getID()).length() + 1;
                 bytesize += String.valueOf(arrayElem.getGeneration()).length() + 2; //space + "R"
-                if (descend && !evaluatedObjects.contains(arrayElem.getID())) {
-                    bytesize += sizeObj(arrayElem, descend);
-                    evaluatedObjects.add(arrayElem.getID());
-                }
+                if (refs != null)
+                    refs.add(arrayElem);
             }else
-                bytesize += sizeObj(arrayElem,descend) +1;
+                bytesize += sizeDirect(arrayElem,refs) +1;
         }
 
         return bytesize;
     }
 
-    private long sizeCosDict(PDFDict dict,boolean descend)
+    private long sizeCosDict(PDFDict dict, List<PDFObject> refs)
     {
         long bytesize = 4; // <<>>
         if (dict.getIndirect())
@@ -120,7 +148,7 @@ class ObjectEvaluator extends PDFObjectEnumProc {
         }
         for (PDFObject pdfObject : dict.getKeys()) {
             PDFName key = (PDFName) pdfObject;
-            bytesize += sizeObj(key, descend);
+            bytesize += sizeDirect(key, null);
 
             PDFObject entry = dict.get(key);
             if (entry.getIndirect()) {
@@ -130,18 +158,16 @@ class ObjectEvaluator extends PDFObjectEnumProc {
                 if(key.getValue().equals("P") || key.getValue().equals("Parent")) //no back-tracking to the parent object: avoids infinite-loops
                     continue;
 
-                if (descend && !evaluatedObjects.contains(entry.getID())) {
-                    bytesize += sizeObj(entry, descend);
-                    evaluatedObjects.add(entry.getID());
-                }
+                if (refs != null)
+                    refs.add(entry);
             } else
-                bytesize += sizeObj(entry, descend) + 1;
+                bytesize += sizeDirect(entry, refs) + 1;
         }
 
         return bytesize;
     }
 
-    private long sizeCosStream(PDFStream stream,boolean descend)
+    private long sizeCosStream(PDFStream stream, List<PDFObject> refs)
     {
         long bytesize = 17; // stream\nendstream
         if(stream.getIndirect())
@@ -149,13 +175,17 @@ class ObjectEvaluator extends PDFObjectEnumProc {
             bytesize += String.valueOf(stream.getID()).length() +1;
             bytesize += String.valueOf(stream.getGeneration()).length() +5; // space + "obj" + space
         }
-        bytesize += sizeObj(stream.getDict(),descend);
+        bytesize += sizeDirect(stream.getDict(),refs);
         bytesize += stream.getLength();
 
         return bytesize;
     }
 
-    private long sizeObj(PDFObject obj, boolean descend)
+    /**
+     * Sizes an object as it is written, without following indirect references.
+     * The indirect objects it refers to are appended to refs, if refs is not null.
+     */
+    private long sizeDirect(PDFObject obj, List<PDFObject> refs)
     {
         switch(getObjType(obj)) {
             //these are the scalars.
@@ -172,113 +202,284 @@ class ObjectEvaluator extends PDFObjectEnumProc {
             case String:
                 return ((PDFString) obj).getBytes().length;
             case Array:
-                return sizeCosArray((PDFArray) obj,descend);
+                return sizeCosArray((PDFArray) obj,refs);
             case Dict:
-                return sizeCosDict((PDFDict) obj,descend);
+                return sizeCosDict((PDFDict) obj,refs);
             case Stream:
-                return sizeCosStream((PDFStream) obj,descend);
+                return sizeCosStream((PDFStream) obj,refs);
         }
         return 0;
     }
 
-    private void record(int id, String category,long size)
+    /**
+     * Collects the indirect objects an object refers to, in the same order the
+     * sizers visit them, without reading any scalar values.
+     */
+    private void collectRefs(PDFObject obj, List<PDFObject> refs)
+    {
+        switch(getObjType(obj)) {
+            case Array:
+                PDFArray array = (PDFArray) obj;
+                for(int i = array.getLength()-1;i>=0;--i)
+                {
+                    PDFObject arrayElem = array.get(i);
+                    if(arrayElem == null)
+                        continue;
+                    if(arrayElem.getIndirect())
+                        refs.add(arrayElem);
+                    else
+                        collectRefs(arrayElem, refs);
+                }
+                break;
+            case Dict:
+                PDFDict dict = (PDFDict) obj;
+                for (PDFObject pdfObject : dict.getKeys()) {
+                    PDFName key = (PDFName) pdfObject;
+                    PDFObject entry = dict.get(key);
+                    if (entry.getIndirect()) {
+                        if(!key.getValue().equals("P") && !key.getValue().equals("Parent"))
+                            refs.add(entry);
+                    } else
+                        collectRefs(entry, refs);
+                }
+                break;
+            case Stream:
+                collectRefs(((PDFStream) obj).getDict(), refs);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the exact size of the object in the file, or -1 if it has to be estimated.
+     */
+    private long exactSize(PDFObject obj)
+    {
+        return (xrefIndex != null && obj.getIndirect()) ? xrefIndex.getSpan(obj.getID()) : -1;
+    }
+
+    /**
+     * Sizes an indirect object once per audit; later calls for the same object ID
+     * are answered from the size cache. Objects stored uncompressed in the file
+     * take their exact size from the xref index, if there is one.
+     */
+    private SizeCache.Entry sizeIndirect(PDFObject obj)
+    {
+        SizeCache.Entry entry = sizeCache.get(obj.getID());
+        if (entry == null) {
+            ArrayList<PDFObject> refs = new ArrayList<>();
+            long size = exactSize(obj);
+            if (size >= 0)
+                collectRefs(obj, refs);
+            else
+                size = sizeDirect(obj, refs);
+            entry = new SizeCache.Entry(size, refs.toArray(new PDFObject[0]));
+            sizeCache.put(obj.getID(), entry);
+        }
+        return entry;
+    }
+
+    long sizeObj(PDFObject obj, boolean descend)
+    {
+        long bytesize;
+        PDFObject[] refs;
+        switch(getObjType(obj)) {
+            case Array:
+            case Dict:
+            case Stream:
+                if (obj.getIndirect()) {
+                    SizeCache.Entry entry = sizeIndirect(obj);
+                    bytesize = entry.size;
+                    refs = entry.refs;
+                } else if (descend) {
+                    ArrayList<PDFObject> refList = new ArrayList<>();
+                    bytesize = sizeDirect(obj, refList);
+                    refs = refList.toArray(new PDFObject[0]);
+                } else
+                    return sizeDirect(obj, null);
+                break;
+            default:
+                long exact = exactSize(obj);
+                return (exact >= 0) ? exact : sizeDirect(obj, null);
+        }
+
+        if (descend)
+            bytesize += sizeReachable(obj, refs);
+        return bytesize;
+    }
+
+    /**
+     * Sizes every object reachable from refs that has not been evaluated yet,
+     * depth first and in the order they are written, as a recursive descent
+     * would; the first category to reach an indirect object claims it.
+     *
+     * The descent runs on an explicit stack of pooled frames rather than the
+     * thread's stack, so long Next chains and deep structure trees cannot
+     * overflow it. Each object is marked evaluated as it is entered, which
+     * stops any cycle, and a reference back to the object the walk started
+     * from is not followed; so the stack never holds more frames than there
+     * are objects in the file, and the pool keeps only as many frames as the
+     * deepest walk so far needed.
+     */
+    private long sizeReachable(PDFObject start, PDFObject[] refs)
+    {
+        final int startId = start.getIndirect() ? start.getID() : -1;
+        long bytesize = 0;
+        int depth = 0;
+        pushFrame(depth++, refs);
+        while (depth > 0) {
+            WalkFrame frame = framePool.get(depth - 1);
+            if (frame.next == frame.refs.length) {
+                frame.refs = null;
+                --depth;
+                continue;
+            }
+            PDFObject ref = frame.refs[frame.next++];
+            int id = ref.getID();
+            if (id == startId || evaluatedObjects.get(id))
+                continue;
+            evaluatedObjects.set(id);
+
+            switch(getObjType(ref)) {
+                case Array:
+                case Dict:
+                case Stream:
+                    SizeCache.Entry entry = sizeIndirect(ref);
+                    bytesize += entry.size;
+                    if (entry.refs.length > 0)
+                        pushFrame(depth++, entry.refs);
+                    break;
+                default:
+                    bytesize += sizeObj(ref, false);
+                    break;
+            }
+        }
+        return bytesize;
+    }
+
+    private void pushFrame(int depth, PDFObject[] refs)
     {
-        if(evaluatedObjects.contains(id))
+        if (depth == framePool.size())
+            framePool.add(new WalkFrame());
+        WalkFrame frame = framePool.get(depth);
+        frame.refs = refs;
+        frame.next = 0;
+    }
+
+    private void record(int id, AuditCategory category,long size)
+    {
+        if(referenceGraph != null && id != ReferenceGraph.ROOT)
+            referenceGraph.setCategory(id, category);
+
+        if(evaluatedObjects.get(id))
             return; // no double counting.
 
-        long totalStreamSaving = byteTracker.get(category);
-        byteTracker.put(category, totalStreamSaving + size);
-        evaluatedObjects.add(id);
+        byteTracker[category.ordinal()] += size;
+        evaluatedObjects.set(id);
+    }
+
+    private void recordCustom(int id, int custom, long size)
+    {
+        if(evaluatedObjects.get(id))
+            return;
+
+        customTracker[custom] += size;
+        evaluatedObjects.set(id);
     }
 
     @Override
     public boolean Call(PDFObject obj, PDFObject val)
     {
-        if(obj.getIndirect() &&  evaluatedObjects.contains(obj.getID()))
+        if(referenceGraph != null && obj.getIndirect())
+            addToGraph(obj);
+
+        // the duplicate finder, image report and savings plan look at every object; otherwise ones already counted are not even classified.
+        boolean evaluated = obj.getIndirect() && evaluatedObjects.get(obj.getID());
+        if(evaluated && duplicateFinder == null && imageReport == null && !collectPlanInputs)
+            return true;
+
+        // read Type and Subtype once; everything below dispatches on these.
+        cosType objType = getObjType(obj);
+        PDFDict dict = objType == cosType.Stream ? ((PDFStream) obj).getDict()
+                : objType == cosType.Dict ? (PDFDict) obj : null;
+        String type = dict != null ? ObjectClassifier.nameOf(dict, "Type") : null;
+        String subtype = dict != null ? ObjectClassifier.nameOf(dict, "Subtype") : null;
+
+        if(duplicateFinder != null)
+            addDuplicateCandidates(obj, objType, dict, type, subtype);
+
+        if(imageReport != null && objType == cosType.Stream && "Image".equals(subtype))
+            imageReport.add(obj.getID(), dict, ((PDFStream) obj).getLength());
+
+        if(collectPlanInputs)
+            addPlanInputs(obj, objType, dict, type);
+
+        if(evaluated)
             return true;
 
         if(obj.getID() > highestindirectId)
             highestindirectId = obj.getID();
 
-        if(getObjType(obj) == cosType.Stream)
+        if(objType == cosType.Stream)
         {
-            if(isImageXObject(obj))
-            {
-                record(obj.getID(),PDFAuditor.IMAGES,sizeObj(obj,true));
+            apply(classifier.forStream(type, subtype), obj, dict);
+        } else if (objType == cosType.Array)
+        {
+            PDFArray array = (PDFArray)obj;
+            if(array.getLength() >0 ) {
+                // check for colorspace arrays
+                PDFObject firstArrayElem = array.get(0);
+                if (getObjType(firstArrayElem) == cosType.Name)
+                    apply(classifier.forArray(((PDFName) firstArrayElem).getValue()), obj, null);
             }
-            else if (isFormXObject(obj)) {
-                record(obj.getID(),PDFAuditor.XOBJECT_FORMS,sizeObj(obj,false));
-                if(((PDFStream)obj).getDict().contains("Resources")) {
-                    PDFDict streamDict = ((PDFStream) obj).getDict();
-                    processResources((PDFDict) streamDict.get("Resources"));
-                }
+        } else if (objType == cosType.Dict)
+        {
+            apply(classifier.forDictType(type), obj, dict);
+            apply(classifier.forDictSubtype(subtype), obj, dict);
+        }
 
-                if(((PDFStream)obj).getDict().contains("PieceInfo")) {
-                    processPieceInfo(((PDFStream)obj).getDict());
-                }
+        return true;
+    }
 
-            }
-            else if(isObjectStream(obj))
-            {
-                PDFStream objStrm =(PDFStream)obj;
-                int decompressedSize=0;
-                //find the decompressed size of the objects stored in this object stream.
+    private void apply(ObjectClassifier.Rule rule, PDFObject obj, PDFDict dict)
+    {
+        if(rule == null)
+            return;
+
+        switch (rule.action) {
+            case RECORD:
+                if(rule.custom >= 0)
+                    recordCustom(obj.getID(), rule.custom, sizeObj(obj, rule.descend));
+                else
+                    record(obj.getID(), rule.category, sizeObj(obj, rule.descend));
+                break;
+            case FORM_XOBJECT:
+                record(obj.getID(),AuditCategory.XOBJECT_FORMS,sizeObj(obj,false));
+                if(dict.contains("Resources"))
+                    processResources((PDFDict) dict.get("Resources"));
+                if(dict.contains("PieceInfo"))
+                    processPieceInfo(dict);
+                break;
+            case OBJECT_STREAM:
+                long decompressedSize=0;
+                //find the decompressed size of the objects stored in this object stream, without holding it in memory.
                 try {
-                    decompressedSize = objStrm.getFilteredStream().readAllBytes().length;
+                    decompressedSize = lengthCounter.filteredLength((PDFStream) obj);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
                 // subtract out the decompressed size as the individual objects will be counted elsewhere; this avoids double-counting.
-                record(obj.getID(),PDFAuditor.OBJECT_COMPRESSION,sizeObj(obj,false)-decompressedSize);
-            }
-            else if (isXRefStream(obj))
-            {
+                record(obj.getID(),AuditCategory.OBJECT_COMPRESSION,sizeObj(obj,false)-decompressedSize);
+                break;
+            case XREF_STREAM:
                 hasStreamXRef = true;
-                record((obj.getID()),PDFAuditor.XREF_TABLE,sizeObj(obj,false) );
-            }
-        } else if (getObjType(obj) == cosType.Array)
-        {
-            PDFArray array = (PDFArray)obj;
-            if(array.getLength() >0 ) {
-                PDFObject firstArrayElem = array.get(0);
-                if (getObjType(firstArrayElem) == cosType.Name) {
-                    PDFName firstName = (PDFName) firstArrayElem;
-
-                    // check for colorspace arrays
-                    if (firstName.getValue().equals("ICCBased") ||
-                            firstName.getValue().equals("Indexed") ||
-                            firstName.getValue().equals("Separation") ||
-                            firstName.getValue().equals("DeviceN") ||
-                            firstName.getValue().equals("Lab") ||
-                            firstName.getValue().equals("CalGray") ||
-                            firstName.getValue().equals("CalRGB")) {
-                        record((obj.getID()), PDFAuditor.COLOR_SPACES, sizeObj(obj,true));
-                    }
-                }
-            }
-        } else if (getObjType(obj) == cosType.Dict)
-            {
-                PDFDict dict= (PDFDict)obj;
-                if(hasType(dict,"ExtGState"))
-                    record(dict.getID(),PDFAuditor.EXT_GRAPHIC_STATES,sizeObj(dict,true));
-
-                if(hasType(dict,"Font"))
-                    record(dict.getID(),PDFAuditor.FONTS,sizeObj(dict,true));
-
-                if(hasType(dict,"FileSpec"))
-                    record(dict.getID(),PDFAuditor.EMBEDDED_FILES,sizeObj(dict,true));
-
-                if(hasSubtype(dict,"Link"))
-                    record(dict.getID(),PDFAuditor.LINK_ANNOTATIONS,sizeObj(dict,false)); //may need to dig deeper for full size.
-                else if (hasSubtype(dict,"FileAttachment"))
-                    processFileAttachmentAnnot(dict);
-                else if (hasSubtype(dict,"3D"))
-                    record(dict.getID(),PDFAuditor.COMMENTS_AND_3D,sizeObj(dict,true));
-                else if (isMarkupAnnot(dict))
-                    record(dict.getID(),PDFAuditor.COMMENTS_AND_3D,sizeObj(dict,true));
-            }
-
-        return true;
+                record(obj.getID(),AuditCategory.XREF_TABLE,sizeObj(obj,false));
+                break;
+            case FILE_ATTACHMENT:
+                processFileAttachmentAnnot((PDFDict) obj);
+                break;
+        }
     }
 
     public void processFileAttachmentAnnot(PDFDict annotDict)
@@ -290,22 +491,22 @@ class ObjectEvaluator extends PDFObjectEnumProc {
                 PDFDict efDict = (PDFDict) fsDict.get("EF");
                 if (efDict.contains("F")) {
                     PDFObject f = efDict.get("F");
-                    record(f.getID(), PDFAuditor.EMBEDDED_FILES, sizeObj(f, true));
+                    record(f.getID(), AuditCategory.EMBEDDED_FILES, sizeObj(f, true));
                 }
             }
         }
-        record(annotDict.getID(),PDFAuditor.COMMENTS_AND_3D,sizeObj(annotDict,true));
+        record(annotDict.getID(),AuditCategory.COMMENTS_AND_3D,sizeObj(annotDict,true));
     }
 
     public void processResources(PDFDict resDict) {
         final String[] resourceCats = {"ExtGState", "ColorSpace", "Pattern", "Shading", "Font"};
-        final String[] categories = {
-                PDFAuditor.EXT_GRAPHIC_STATES, PDFAuditor.COLOR_SPACES, PDFAuditor.PATTERN,
-                PDFAuditor.SHADING, PDFAuditor.FONTS
+        final AuditCategory[] categories = {
+                AuditCategory.EXT_GRAPHIC_STATES, AuditCategory.COLOR_SPACES, AuditCategory.PATTERN,
+                AuditCategory.SHADING, AuditCategory.FONTS
         };
         for (int i = resourceCats.length - 1; i >= 0; --i) {
             String resource = resourceCats[i];
-            String category = categories[i];
+            AuditCategory category = categories[i];
 
             if (resDict.contains(resource)) {
                 PDFDict catResDicts = (PDFDict) resDict.get(resource);
@@ -314,7 +515,7 @@ class ObjectEvaluator extends PDFObjectEnumProc {
                 else {
                     for (PDFObject keyObj : catResDicts.getKeys()) {
                         PDFObject item = catResDicts.get((PDFName) keyObj);
-                        if (item.getIndirect() && !evaluatedObjects.contains(item.getID()))
+                        if (item.getIndirect() && !evaluatedObjects.get(item.getID()))
                             record(item.getID(), category, sizeObj(item, true));
                     }
                 }
@@ -326,16 +527,16 @@ class ObjectEvaluator extends PDFObjectEnumProc {
     {
         PDFObject spiderInfo = parent.get("SpiderInfo");
         if(spiderInfo.getIndirect())
-            record(spiderInfo.getID(), PDFAuditor.WEB_CAPTURE,sizeObj(spiderInfo,true));
+            record(spiderInfo.getID(), AuditCategory.WEB_CAPTURE,sizeObj(spiderInfo,true));
         else{
-            byteTracker.put(PDFAuditor.WEB_CAPTURE,sizeObj(spiderInfo,true));
+            byteTracker[AuditCategory.WEB_CAPTURE.ordinal()] = sizeObj(spiderInfo,true);
         }
     }
 
     public void processPieceInfo(PDFDict parent)
     {
         PDFObject pieceInfo = parent.get("PieceInfo");
-        record(pieceInfo.getID(), PDFAuditor.PIECE_INFO,sizeObj(pieceInfo,true));
+        record(pieceInfo.getID(), AuditCategory.PIECE_INFO,sizeObj(pieceInfo,true));
 
     }
 
@@ -344,11 +545,9 @@ class ObjectEvaluator extends PDFObjectEnumProc {
         if(pgDict.contains("Contents")) {
             PDFObject contents = pgDict.get("Contents");
             if(contents.getIndirect())
-                record(contents.getID(), PDFAuditor.CONTENT_STREAMS, sizeObj(contents,true));
+                record(contents.getID(), AuditCategory.CONTENT_STREAMS, sizeObj(contents,true));
             else{
-                Long cursize = byteTracker.get(PDFAuditor.CONTENT_STREAMS);
-                cursize +=sizeObj(contents,true);
-                byteTracker.put(PDFAuditor.CONTENT_STREAMS,cursize);
+                byteTracker[AuditCategory.CONTENT_STREAMS.ordinal()] += sizeObj(contents,true);
             }
         }
         if(pgDict.contains("Resources"))
@@ -356,7 +555,7 @@ class ObjectEvaluator extends PDFObjectEnumProc {
 
         if(pgDict.contains("Thumb")) {
             PDFObject thumbnail = pgDict.get("Thumb");
-            record(thumbnail.getID(), PDFAuditor.THUMBNAILS,sizeObj(thumbnail,false));
+            record(thumbnail.getID(), AuditCategory.THUMBNAILS,sizeObj(thumbnail,false));
         }
 
         //page pieceInfo
@@ -364,43 +563,195 @@ class ObjectEvaluator extends PDFObjectEnumProc {
             processPieceInfo(pgDict);
         }
 
-        evaluatedObjects.add(pgDict.getID());
+        evaluatedObjects.set(pgDict.getID());
+    }
+
+    /**
+     * Adds up what the page uses, by column: its content streams, resources,
+     * images (at any depth), annotations and thumbnail. Objects an earlier
+     * page already counted go into the SHARED column; other page objects
+     * reached through links are not followed.
+     */
+    public void attributePage(PDFDict pgDict, PageBreakdown row)
+    {
+        if (pageCountedObjects == null) {
+            pageCountedObjects = new BitSet();
+            pageStamps = new int[Math.max(highestindirectId + 1, 16)];
+        }
+
+        if (pgDict.contains("Contents"))
+            attributeToPage(pgDict.get("Contents"), row, PageBreakdown.Column.CONTENTS);
+
+        if (pgDict.contains("Resources")) {
+            PDFObject resources = pgDict.get("Resources");
+            if (resources instanceof PDFDict) {
+                PDFDict resDict = (PDFDict) resources;
+                if (resources.getIndirect() && stampForPage(resources, row))
+                    attributeObject(resources, row, PageBreakdown.Column.RESOURCES);
+                for (PDFObject keyObj : resDict.getKeys()) {
+                    String resource = ((PDFName) keyObj).getValue();
+                    attributeToPage(resDict.get((PDFName) keyObj), row,
+                            resource.equals("XObject") ? PageBreakdown.Column.IMAGES : PageBreakdown.Column.RESOURCES);
+                }
+            }
+        }
+
+        if (pgDict.contains("Annots"))
+            attributeToPage(pgDict.get("Annots"), row, PageBreakdown.Column.ANNOTATIONS);
+
+        if (pgDict.contains("Thumb"))
+            attributeToPage(pgDict.get("Thumb"), row, PageBreakdown.Column.THUMBNAIL);
+    }
+
+    /**
+     * Walks obj and the indirect objects below it with an explicit stack.
+     * Under the IMAGES column, only image XObjects count as images; form
+     * XObjects and anything else count as resources.
+     */
+    private void attributeToPage(PDFObject obj, PageBreakdown row, PageBreakdown.Column column)
+    {
+        ArrayDeque<PDFObject> pending = new ArrayDeque<>();
+        if (obj.getIndirect())
+            pending.push(obj);
+        else {
+            ArrayList<PDFObject> refs = new ArrayList<>();
+            collectRefs(obj, refs);
+            for (PDFObject ref : refs)
+                pending.push(ref);
+        }
+
+        while (!pending.isEmpty()) {
+            PDFObject cur = pending.pop();
+            if (!stampForPage(cur, row))
+                continue; // already seen on this page
+
+            if (cur instanceof PDFDict && hasType((PDFDict) cur, "Page"))
+                continue; // links to other pages
+
+            PageBreakdown.Column curColumn = column;
+            if (column == PageBreakdown.Column.IMAGES)
+                curColumn = isImageXObject(cur) ? PageBreakdown.Column.IMAGES : PageBreakdown.Column.RESOURCES;
+            for (PDFObject ref : attributeObject(cur, row, curColumn))
+                pending.push(ref);
+        }
     }
 
+    /**
+     * @return true the first time the page reaches this object.
+     */
+    private boolean stampForPage(PDFObject obj, PageBreakdown row)
+    {
+        int id = obj.getID();
+        if (id >= pageStamps.length)
+            pageStamps = Arrays.copyOf(pageStamps, Math.max(id + 1, pageStamps.length * 2));
+        if (pageStamps[id] == row.getPage())
+            return false;
+        pageStamps[id] = row.getPage();
+        return true;
+    }
+
+    /**
+     * Counts one indirect object for the page and returns the objects it refers to.
+     */
+    private PDFObject[] attributeObject(PDFObject obj, PageBreakdown row, PageBreakdown.Column column)
+    {
+        long size;
+        PDFObject[] refs;
+        switch(getObjType(obj)) {
+            case Array:
+            case Dict:
+            case Stream:
+                SizeCache.Entry entry = sizeIndirect(obj);
+                size = entry.size;
+                refs = entry.refs;
+                break;
+            default:
+                size = sizeObj(obj, false);
+                refs = new PDFObject[0];
+                break;
+        }
+        if (pageCountedObjects.get(obj.getID()))
+            row.add(PageBreakdown.Column.SHARED, size);
+        else {
+            row.add(column, size);
+            pageCountedObjects.set(obj.getID());
+        }
+        return refs;
+    }
+
+    /**
+     * Sizes each name tree's keys and values in one pass, as the library
+     * enumerates the entries; nothing is collected and no key is looked up
+     * again. The node dictionaries are counted separately, by following Kids
+     * only, for the tree's node count and depth.
+     */
     public void processNameTrees(PDFDict namesDict)
     {
         final String[] namedTrees = {"Dests","EmbeddedFiles","IDS","URLS"};
-        final String[] categories = {PDFAuditor.NAMED_DESTINATIONS,PDFAuditor.EMBEDDED_FILES,PDFAuditor.WEB_CAPTURE,PDFAuditor.WEB_CAPTURE};
+        final AuditCategory[] categories = {AuditCategory.NAMED_DESTINATIONS,AuditCategory.EMBEDDED_FILES,AuditCategory.WEB_CAPTURE,AuditCategory.WEB_CAPTURE};
         final Boolean[] descents ={false,true,true,true}; // might need to tweak this
 
         for(int i= namedTrees.length-1;i>=0;--i) {
             String namedTree = namedTrees[i];
-            String category = categories[i];
+            AuditCategory category = categories[i];
             boolean descend =descents[i];
 
             if (namesDict.contains(namedTree)) {
+                final NameTreeStats stats = new NameTreeStats(namedTree);
                 NameTree curNameTree = namesDict.getDocument().getNameTree(namedTree);
-                HashSet<PDFString> namedItems = new HashSet<>();
                 PDFObjectEnumProc treeIter = new PDFObjectEnumProc() {
                     @Override
-                    public boolean Call(PDFObject pdfObject, PDFObject pdfObject1) {
-                        namedItems.add(((PDFString) pdfObject));
+                    public boolean Call(PDFObject key, PDFObject value) {
+                        stats.addEntry(sizeObj(key, false) + sizeObj(value, descend));
                         return true;
                     }
                 };
                 curNameTree.enumEntries(treeIter);
-                Iterator<PDFString> hashIt = namedItems.iterator();
-                long cursize = byteTracker.get(category);
-                while (hashIt.hasNext()) {
-                    PDFString key = hashIt.next();
-                    PDFObject obj = curNameTree.get(key);
-                    cursize += sizeObj(key, false);
-                    cursize += sizeObj(obj, descend);
+                countNameTreeNodes(namesDict.get(namedTree), stats);
+                byteTracker[category.ordinal()] += stats.getBytes();
+                nameTreeStats.add(stats);
+            }
+        }
+
+    }
+
+    /**
+     * Counts the tree's node dictionaries and levels with an explicit stack,
+     * skipping any node reached a second time.
+     */
+    private static void countNameTreeNodes(PDFObject root, NameTreeStats stats)
+    {
+        ArrayDeque<PDFObject> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        BitSet seen = new BitSet();
+        nodes.push(root);
+        depths.push(1);
+        while (!nodes.isEmpty()) {
+            PDFObject node = nodes.pop();
+            int depth = depths.pop();
+            if (!(node instanceof PDFDict))
+                continue;
+            if (node.getIndirect()) {
+                if (seen.get(node.getID()))
+                    continue;
+                seen.set(node.getID());
+            }
+            stats.addNode(depth);
+
+            PDFDict nodeDict = (PDFDict) node;
+            if (nodeDict.contains("Kids") && nodeDict.get("Kids") instanceof PDFArray) {
+                PDFArray kids = (PDFArray) nodeDict.get("Kids");
+                for (int k = kids.getLength() - 1; k >= 0; --k) {
+                    nodes.push(kids.get(k));
+                    depths.push(depth + 1);
                 }
-                byteTracker.put(category, cursize);
             }
         }
+    }
 
+    List<NameTreeStats> getNameTreeStats()
+    {
+        return nameTreeStats;
     }
 
     public void processAcroForm(PDFDict acroFormDict)
@@ -408,36 +759,233 @@ class ObjectEvaluator extends PDFObjectEnumProc {
         if(acroFormDict.contains("DR"))
             processResources((PDFDict)acroFormDict.get("DR"));
 
-        record(acroFormDict.getID(),PDFAuditor.ACRO_FORMS,sizeObj(acroFormDict,true));
+        record(acroFormDict.getID(),AuditCategory.ACRO_FORMS,sizeObj(acroFormDict,true));
     }
 
     public void processStructTree(PDFDict structTree)
     {
-        record(structTree.getID(),PDFAuditor.STRUCTURE_INFO,sizeObj(structTree,true));
+        record(structTree.getID(),AuditCategory.STRUCTURE_INFO,sizeObj(structTree,true));
     }
 
-    public void processBookMarks(Bookmark node)
+    /**
+     * Visits every outline item once, in document order, by moving between
+     * first children, next siblings and parents instead of recursing, so the
+     * walk needs no stack however long or deep the outline is. An item
+     * reached a second time, through a malformed First or Next entry, ends
+     * that run of siblings.
+     */
+    public void processBookMarks(Bookmark root)
     {
-        long cursize = byteTracker.get(PDFAuditor.BOOKMARKS);
-        cursize+=sizeObj(node.getPDFDict(),false);
-        byteTracker.put(PDFAuditor.BOOKMARKS,cursize);
-        if(node.hasChildren())
-        {
-            processBookMarks(node.getFirstChild());
+        BitSet visited = new BitSet();
+        final int rootId = root.getPDFDict().getID();
+        visited.set(rootId);
+
+        Bookmark node = root;
+        int depth = 0;
+        while (node != null) {
+            countBookmark(node, depth);
+
+            Bookmark next = node.hasChildren() ? node.getFirstChild() : null;
+            if (next != null && firstVisit(visited, next)) {
+                node = next;
+                ++depth;
+                continue;
+            }
+
+            // climb until an ancestor (or the node itself) has a next sibling.
+            next = null;
+            while (node != null && node.getPDFDict().getID() != rootId) {
+                next = node.getNext();
+                if (next != null && firstVisit(visited, next))
+                    break;
+                next = null;
+                node = node.getParent();
+                --depth;
+            }
+            node = next;
         }
-        else{
-            Bookmark nextNode = node.getNext();
-            if(nextNode != null)
-                processBookMarks(nextNode);
+    }
+
+    private static boolean firstVisit(BitSet visited, Bookmark node)
+    {
+        int id = node.getPDFDict().getID();
+        if (visited.get(id))
+            return false;
+        visited.set(id);
+        return true;
+    }
+
+    private void countBookmark(Bookmark node, int depth)
+    {
+        byteTracker[AuditCategory.BOOKMARKS.ordinal()] += sizeObj(node.getPDFDict(),false);
+        if(referenceGraph != null && node.getPDFDict().getIndirect())
+            referenceGraph.setCategory(node.getPDFDict().getID(), AuditCategory.BOOKMARKS);
+        if (depth > 0)
+            ++outlineNodes;
+        outlineDepth = Math.max(outlineDepth, depth);
+    }
+
+    /**
+     * @return the number of outline items, not counting the outline dictionary itself.
+     */
+    long getOutlineNodes()
+    {
+        return outlineNodes;
+    }
+
+    /**
+     * @return the nesting depth of the deepest outline item; top-level items are 1 deep.
+     */
+    long getOutlineDepth()
+    {
+        return outlineDepth;
+    }
+
+    /**
+     * Captures every indirect object's size and references into the graph as
+     * the objects are enumerated, and labels them with the categories they are
+     * recorded under.
+     */
+    void captureReferences(ReferenceGraph graph)
+    {
+        referenceGraph = graph;
+    }
+
+    /**
+     * Hands every image, font program and embedded file stream to the finder
+     * as the objects are enumerated.
+     */
+    void findDuplicates(DuplicateFinder finder)
+    {
+        duplicateFinder = finder;
+    }
+
+    /**
+     * Records the dictionary and encoded length of every image XObject as
+     * the objects are enumerated.
+     */
+    void reportImages(ImageReport report)
+    {
+        imageReport = report;
+    }
+
+    /**
+     * Adds up, as the objects are enumerated, what the savings plan needs
+     * beyond the category totals: the bytes of objects that could go into
+     * object streams, and of embedded font programs that are not subsets.
+     */
+    void collectPlanInputs(boolean enable)
+    {
+        collectPlanInputs = enable;
+    }
+
+    long getLooseObjectBytes()
+    {
+        return looseObjectBytes;
+    }
+
+    Map<Integer, Long> getUnsubsetFontPrograms()
+    {
+        return unsubsetFontPrograms;
+    }
+
+    boolean hasStreamXRef()
+    {
+        return hasStreamXRef;
+    }
+
+    int getHighestObjectId()
+    {
+        return highestindirectId;
+    }
+
+    private void addPlanInputs(PDFObject obj, cosType objType, PDFDict dict, String type)
+    {
+        if (objType != cosType.Stream)
+            looseObjectBytes += sizeObj(obj, false);
+
+        if (objType == cosType.Dict && "FontDescriptor".equals(type)) {
+            // a subset's name starts with a six-letter tag and a plus sign, as in ABCDEF+Helvetica.
+            String fontName = ObjectClassifier.nameOf(dict, "FontName");
+            if (fontName != null && fontName.length() > 7 && fontName.charAt(6) == '+')
+                return;
+            final String[] fontFiles = {"FontFile", "FontFile2", "FontFile3"};
+            for (String fontFile : fontFiles) {
+                if (dict.contains(fontFile)) {
+                    PDFObject program = dict.get(fontFile);
+                    // a program shared by several descriptors is still one program to subset.
+                    if (program instanceof PDFStream)
+                        unsubsetFontPrograms.putIfAbsent(program.getID(), (long) ((PDFStream) program).getLength());
+                }
+            }
         }
     }
 
+    private void addDuplicateCandidates(PDFObject obj, cosType objType, PDFDict dict, String type, String subtype)
+    {
+        try {
+            if (objType == cosType.Stream) {
+                if ("Image".equals(subtype))
+                    duplicateFinder.add(obj.getID(), AuditCategory.IMAGES, sizeObj(obj, false), (PDFStream) obj);
+                else if ("EmbeddedFile".equals(type))
+                    duplicateFinder.add(obj.getID(), AuditCategory.EMBEDDED_FILES, sizeObj(obj, false), (PDFStream) obj);
+            } else if (objType == cosType.Dict && "FontDescriptor".equals(type)) {
+                final String[] fontFiles = {"FontFile", "FontFile2", "FontFile3"};
+                for (String fontFile : fontFiles) {
+                    if (dict.contains(fontFile)) {
+                        PDFObject program = dict.get(fontFile);
+                        if (program instanceof PDFStream && program.getIndirect())
+                            duplicateFinder.add(program.getID(), AuditCategory.FONTS, sizeObj(program, false),
+                                    (PDFStream) program);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void addToGraph(PDFObject obj)
+    {
+        switch(getObjType(obj)) {
+            case Array:
+            case Dict:
+            case Stream:
+                SizeCache.Entry entry = sizeIndirect(obj);
+                referenceGraph.setSize(obj.getID(), entry.size);
+                for (PDFObject ref : entry.refs)
+                    referenceGraph.addEdge(obj.getID(), ref.getID());
+                break;
+            default:
+                referenceGraph.setSize(obj.getID(), sizeObj(obj, false));
+                break;
+        }
+    }
+
+    SizeCache getSizeCache()
+    {
+        return sizeCache;
+    }
+
+    StreamLengthCounter getLengthCounter()
+    {
+        return lengthCounter;
+    }
+
     public void determineXrefSize()
     {
-        if(!hasStreamXRef && byteTracker.get(PDFAuditor.XREF_TABLE) ==0)
+        if(xrefIndex != null)
+        {
+            // xref streams were recorded as objects; this adds any classic tables.
+            byteTracker[AuditCategory.XREF_TABLE.ordinal()] += xrefIndex.getXRefTableBytes();
+            return;
+        }
+        if(!hasStreamXRef && byteTracker[AuditCategory.XREF_TABLE.ordinal()] ==0)
         {
             final long xRefEntrySize = 20L;
-            byteTracker.put(PDFAuditor.XREF_TABLE, xRefEntrySize * highestindirectId);
+            byteTracker[AuditCategory.XREF_TABLE.ordinal()] = xRefEntrySize * highestindirectId;
         }
     }
 }
@@ -472,13 +1020,281 @@ class ObjectEvaluator extends PDFObjectEnumProc {
  * streams (represented as a negative number) and the total file size.
  *
  * NOTE: These sizes are not going to match the sizes returned by Acrobat and
- * were never intended to.
+ * were never intended to. When an XRefIndex for the file is supplied, objects
+ * stored uncompressed are sized exactly from their byte spans in the file;
+ * everything else is estimated by re-serializing it.
  *
  */
 public class PDFAuditor {
 
+    private int sizeCacheCapacity = SizeCache.DEFAULT_CAPACITY;
+    private long sizeCacheHits;
+    private long sizeCacheMisses;
+    private long maxDecodedStreamBytes = StreamLengthCounter.NO_CAP;
+    private int cappedStreams;
+    private boolean retainedSizes;
+    private long retainedSizeBudget = ReferenceGraph.DEFAULT_BUDGET;
+    private int topCount = RetainedSizeReport.DEFAULT_TOP_COUNT;
+    private RetainedSizeReport retainedSizeReport;
+    private Consumer<PageBreakdown> pageRowHandler;
+    private int duplicateThreads;
+    private DuplicateFinder.DuplicateReport duplicateReport;
+    private List<NameTreeStats> nameTreeStats = Collections.emptyList();
+    private boolean hasOutline;
+    private long sampleObjects;
+    private long sampleMillis;
+    private long exactBelow = AuditSampler.DEFAULT_EXACT_BELOW;
+    private AuditSampler.SamplingReport samplingReport;
+    private long outlineNodes;
+    private long outlineDepth;
+    private final ObjectClassifier classifier = new ObjectClassifier();
+    private long[] customTotals = new long[0];
+    private boolean profileContents;
+    private ContentProfiler contentProfile;
+    private boolean reportImages;
+    private ImageReport imageReport;
+    private boolean plan;
+    private SavingsPlan savingsPlan;
+
+    /**
+     * The dictionary entry a category registered with addCategory matches on.
+     */
+    public enum CategoryMatch {
+        /** the Type of a dictionary. */
+        TYPE,
+        /** the Subtype of a dictionary. */
+        SUBTYPE,
+        /** the Type in a stream's dictionary. */
+        STREAM_TYPE,
+        /** the Subtype in a stream's dictionary. */
+        STREAM_SUBTYPE
+    }
+
     public PDFAuditor() {}
 
+    /**
+     * Adds a category of the caller's own: indirect objects whose Type or
+     * Subtype entry has the given value are counted under the label in the
+     * audit map, and no longer in the document overhead. Several
+     * registrations may share a label. Sampled audits do not report them.
+     *
+     * @param label the key the category's size is reported under
+     * @param match which entry the value is compared with
+     * @param value the Type or Subtype name, without the slash
+     * @param descend whether the objects a matching object refers to are counted with it
+     * @throws IllegalArgumentException if the label is a built-in category or the value already has a category
+     */
+    public void addCategory(String label, CategoryMatch match, String value, boolean descend) {
+        for (final AuditCategory cat : AuditCategory.VALUES)
+            if (cat.label.equals(label))
+                throw new IllegalArgumentException(label + " is a built-in category");
+        classifier.addCategory(label, match, value, descend);
+    }
+
+    /**
+     * Sets how many indirect object sizes are memoized during an audit. Each
+     * object's size is computed once and reused by every category that reaches
+     * it; the least recently used entries are evicted beyond this limit.
+     *
+     * @param capacity number of objects to remember
+     */
+    public void setSizeCacheCapacity(int capacity) {
+        sizeCacheCapacity = capacity;
+    }
+
+    /**
+     * Limits how many bytes are decoded from any one stream when the auditor
+     * needs its decoded length (object streams). Streams are always counted
+     * through a fixed buffer; the cap only bounds the time spent on
+     * pathological streams, whose length is then under-reported.
+     *
+     * @param maxBytes the cap, or Long.MAX_VALUE for none
+     */
+    public void setMaxDecodedStreamBytes(long maxBytes) {
+        maxDecodedStreamBytes = maxBytes;
+    }
+
+    /**
+     * Turns on retained-size analysis. The audit then also captures the
+     * reference graph between indirect objects, computes its dominator tree,
+     * and reports what removing each category, page or object would free.
+     *
+     * @param enable whether to compute retained sizes
+     */
+    public void setRetainedSizes(boolean enable) {
+        retainedSizes = enable;
+    }
+
+    /**
+     * Sets the memory the reference graph and dominator tree may use. Graphs
+     * that would need more are cut short and the report says so.
+     *
+     * @param bytes the budget in bytes
+     */
+    public void setRetainedSizeBudget(long bytes) {
+        retainedSizeBudget = bytes;
+    }
+
+    /**
+     * @param count how many of the largest pages and objects the retained-size report lists
+     */
+    public void setRetainedSizeTopCount(int count) {
+        topCount = count;
+    }
+
+    /**
+     * Turns on the per-page breakdown. While the auditor walks the pages it
+     * hands each page's row to the handler as soon as the page is done, in
+     * page order, so large documents never hold all rows at once.
+     *
+     * @param handler receives one row per page, or null to turn the breakdown off
+     */
+    public void setPageRowHandler(Consumer<PageBreakdown> handler) {
+        pageRowHandler = handler;
+    }
+
+    /**
+     * Turns on the search for duplicated image, font program and embedded
+     * file streams. The streams are read as the objects are enumerated and
+     * hashed on worker threads.
+     *
+     * @param threads the number of hashing threads, or 0 to turn the search off
+     */
+    public void setDuplicateThreads(int threads) {
+        duplicateThreads = threads;
+    }
+
+    /**
+     * Turns on content stream profiling. Each page's content streams are
+     * decoded and tokenized for operator counts, path segments, text-showing
+     * operations and inline images, without building Content or Element
+     * objects. Streams are read no further than the decode cap.
+     *
+     * @param enable whether to profile the content streams
+     */
+    public void setContentProfiling(boolean enable) {
+        profileContents = enable;
+    }
+
+    /**
+     * @return the content stream profile of the last audit, or null if it was not requested.
+     */
+    ContentProfiler getContentProfile() {
+        return contentProfile;
+    }
+
+    /**
+     * Turns on the image compression report: the filters, dimensions,
+     * colour space, encoded length and estimated decoded size of every
+     * image XObject, with the ones worth recompressing ranked by the bytes
+     * that would save. Only image dictionaries are read, never image data.
+     *
+     * @param enable whether to report on images
+     */
+    public void setImageReport(boolean enable) {
+        reportImages = enable;
+    }
+
+    /**
+     * @return the image compression report of the last audit, or null if it was not requested.
+     */
+    ImageReport getImageReport() {
+        return imageReport;
+    }
+
+    /**
+     * Turns on the savings plan: an estimate, made from the audit, of the
+     * bytes each size optimization would save, ranked. Deduplication is
+     * only estimated when duplicate streams are searched for as well.
+     *
+     * @param enable whether to plan savings
+     */
+    public void setSavingsPlan(boolean enable) {
+        plan = enable;
+    }
+
+    /**
+     * @return the savings plan of the last audit, or null if it was not requested or the audit was sampled.
+     */
+    SavingsPlan getSavingsPlan() {
+        return savingsPlan;
+    }
+
+    /**
+     * Turns on sampling: files at or above the sampling threshold are audited
+     * from a stratified random sample of their objects instead of all of
+     * them, and the totals are estimates with confidence intervals. Sampling
+     * needs the file's cross-reference index; without one, and for files
+     * below the threshold or with no more objects than the budget, the audit
+     * is exact. Retained sizes, page rows and duplicates are not computed
+     * for sampled audits.
+     *
+     * @param maxObjects the most objects to sample, or 0 for no limit
+     * @param maxMillis how long to sample for, or 0 for no limit
+     */
+    public void setSampling(long maxObjects, long maxMillis) {
+        sampleObjects = Math.max(maxObjects, 0);
+        sampleMillis = Math.max(maxMillis, 0);
+    }
+
+    /**
+     * Sets the file size below which audits stay exact even with sampling on.
+     *
+     * @param bytes the threshold in bytes
+     */
+    public void setSamplingThreshold(long bytes) {
+        exactBelow = bytes;
+    }
+
+    /**
+     * @return the estimates and confidence intervals of the last audit, or null if it was exact.
+     */
+    AuditSampler.SamplingReport getSamplingReport() {
+        return samplingReport;
+    }
+
+    /**
+     * @return the entry count, node count and depth of each name tree the last audit sized.
+     */
+    List<NameTreeStats> getNameTreeStats() {
+        return nameTreeStats;
+    }
+
+    /**
+     * @return the duplicates found by the last audit, or null if they were not requested.
+     */
+    DuplicateFinder.DuplicateReport getDuplicateReport() {
+        return duplicateReport;
+    }
+
+    /**
+     * @return the retained sizes from the last audit, or null if they were not requested.
+     */
+    RetainedSizeReport getRetainedSizeReport() {
+        return retainedSizeReport;
+    }
+
+    /**
+     * @return the number of streams in the last audit that were longer than the decode cap.
+     */
+    public int getCappedStreams() {
+        return cappedStreams;
+    }
+
+    /**
+     * @return the number of object sizes answered from the size cache by the last audit.
+     */
+    public long getSizeCacheHits() {
+        return sizeCacheHits;
+    }
+
+    /**
+     * @return the number of object sizes that had to be computed by the last audit.
+     */
+    public long getSizeCacheMisses() {
+        return sizeCacheMisses;
+    }
+
     public final static String ACRO_FORMS = "Acrobat Forms*";
     public final static String BOOKMARKS = "Bookmarks";
     public final static String COMMENTS_AND_3D = "Comments and 3D Content";
@@ -502,6 +1318,10 @@ public class PDFAuditor {
     public final static String WEB_CAPTURE = "Web Capture Info";
     public final static String PIECE_INFO = "Piece Info";
 
+    // outline statistics added to the audit map when the document has an outline; these are counts, not bytes.
+    public final static String OUTLINE_NODES = "Outline Items";
+    public final static String OUTLINE_DEPTH = "Outline Depth";
+
     /**
      * Method to audit PDF.  Calculates size of assorted aspects of the file
      * and returns them in a HashMap identifying those aspects and what size 
@@ -511,28 +1331,182 @@ public class PDFAuditor {
      * @return HashMap<String, Long>
      */
     public HashMap<String, Long> auditPDF(Document pdfIn,long docSize) {
-        HashMap<String, Long> toReturn = initializeMap(docSize);
+        return withExtras(toMap(auditTotals(pdfIn, docSize, null)));
+    }
 
-        ObjectEvaluator objEval = new ObjectEvaluator(toReturn);
+    /**
+     * Method to audit PDF, sizing objects exactly where the file's
+     * cross-reference data allows it.
+     *
+     * @param pdfIn PDFDocument
+     * @param xrefIndex the cross-reference data read from the same file, or null
+     * @return HashMap<String, Long>
+     */
+    HashMap<String, Long> auditPDF(Document pdfIn,long docSize,XRefIndex xrefIndex) {
+        return withExtras(toMap(auditTotals(pdfIn, docSize, xrefIndex)));
+    }
 
-        pdfIn.enumIndirectPDFObjects(objEval);
+    /**
+     * Audits a PDF held in memory, such as one received over the network,
+     * without writing it to a file first. The document's size is the
+     * array's length.
+     *
+     * @param data the whole PDF
+     * @return HashMap<String, Long>
+     */
+    public HashMap<String, Long> auditPDF(byte[] data) {
+        return auditPDF(ByteBuffer.wrap(data));
+    }
 
-        objEval.determineXrefSize();
+    /**
+     * Audits a PDF held in a buffer, from its position to its limit. The
+     * document's size is the bytes remaining, and the buffer's position is
+     * not changed.
+     *
+     * @param buffer the whole PDF, heap or direct
+     * @return HashMap<String, Long>
+     */
+    public HashMap<String, Long> auditPDF(ByteBuffer buffer) {
+        return auditBuffers(XRefIndex.split(buffer));
+    }
+
+    /**
+     * Audits a PDF stored in a region of a file, such as an archive member,
+     * by mapping the region into memory. The document's size is the
+     * region's size.
+     *
+     * @param channel the file, open for reading
+     * @param position where the PDF starts in the file
+     * @param size the PDF's length
+     * @return HashMap<String, Long>
+     */
+    public HashMap<String, Long> auditPDF(FileChannel channel, long position, long size) throws IOException {
+        return auditBuffers(XRefIndex.map(channel, position, size));
+    }
+
+    /**
+     * Opens the document from the buffers themselves, so the library reads
+     * the same memory the cross-reference index does.
+     */
+    private HashMap<String, Long> auditBuffers(ByteBuffer[] chunks) {
+        XRefIndex xrefIndex = null;
+        try {
+            xrefIndex = XRefIndex.parse(chunks);
+        } catch (IOException e) {
+            // sizes are estimated instead.
+        }
+
+        Document pdfIn = new Document(new BufferInputStream(chunks));
+        try {
+            return auditPDF(pdfIn, XRefIndex.totalLength(chunks), xrefIndex);
+        } finally {
+            pdfIn.close();
+        }
+    }
+
+    /**
+     * Audits the PDF into a primitive accumulator indexed by AuditCategory
+     * ordinal; auditPDF is a map view over this.
+     *
+     * @param pdfIn PDFDocument
+     * @param xrefIndex the cross-reference data read from the same file, or null
+     * @return long[] of sizes, one per AuditCategory
+     */
+    long[] auditTotals(Document pdfIn,long docSize,XRefIndex xrefIndex) {
+        samplingReport = null;
+        hasOutline = false;
+        if ((sampleObjects > 0 || sampleMillis > 0) && xrefIndex != null && docSize >= exactBelow
+                && (sampleObjects == 0 || AuditSampler.getPopulation(xrefIndex) > sampleObjects)) {
+            samplingReport = new AuditSampler(xrefIndex, docSize, sampleObjects, sampleMillis).run();
+            retainedSizeReport = null;
+            duplicateReport = null;
+            nameTreeStats = Collections.emptyList();
+            sizeCacheHits = 0;
+            sizeCacheMisses = 0;
+            cappedStreams = 0;
+            customTotals = new long[0];
+            contentProfile = null;
+            imageReport = null;
+            savingsPlan = null;
+            return samplingReport.getEstimates();
+        }
+
+        long[] totals = new long[AuditCategory.VALUES.length];
+        totals[AuditCategory.FILE_SIZE.ordinal()] = docSize;
+
+        ObjectEvaluator objEval = new ObjectEvaluator(totals,
+                xrefIndex != null ? xrefIndex.getSize() : expectedObjectCount(pdfIn), sizeCacheCapacity,
+                maxDecodedStreamBytes, xrefIndex);
+        customTotals = new long[classifier.getCustomLabels().size()];
+        objEval.classifyWith(classifier, customTotals);
 
         PDFDict root =pdfIn.getRoot();
 
+        ReferenceGraph graph = null;
+        retainedSizeReport = null;
+        if (retainedSizes) {
+            graph = new ReferenceGraph(xrefIndex != null ? xrefIndex.getSize() : expectedObjectCount(pdfIn),
+                    retainedSizeBudget);
+            graph.addEdge(ReferenceGraph.ROOT, root.getID());
+            PDFDict trailer = pdfIn.getTrailer();
+            if (trailer != null && trailer.contains("Info") && trailer.get("Info").getIndirect())
+                graph.addEdge(ReferenceGraph.ROOT, trailer.get("Info").getID());
+            objEval.captureReferences(graph);
+        }
+
+        imageReport = reportImages ? new ImageReport() : null;
+        objEval.reportImages(imageReport);
+        objEval.collectPlanInputs(plan);
+
+        duplicateReport = null;
+        if (duplicateThreads > 0) {
+            try (DuplicateFinder finder = new DuplicateFinder(duplicateThreads)) {
+                objEval.findDuplicates(finder);
+                pdfIn.enumIndirectPDFObjects(objEval);
+                duplicateReport = finder.finish();
+            }
+            objEval.findDuplicates(null);
+        } else
+            pdfIn.enumIndirectPDFObjects(objEval);
+
+        objEval.determineXrefSize();
+
         if(root.contains("PieceInfo"))
             objEval.processPieceInfo(root);
 
         if(root.contains("SpiderInfo"))
             objEval.processSpiderInfo(root);
 
+        contentProfile = profileContents
+                ? new ContentProfiler(maxDecodedStreamBytes, ContentProfiler.DEFAULT_TOP_COUNT) : null;
         int numPages= pdfIn.getNumPages();
+        int[] pageIds = new int[numPages];
+        // an object is counted under the category of the first path that reaches it, so the pages go in the order they
+        // always have, last to first, and the totals do not depend on which reports are asked for.
         for(int i=numPages-1;i>=0;--i)
         {
             Page pg = pdfIn.getPage(i);
+            pageIds[i] = pg.getPDFDict().getID();
             objEval.processPageDict(pg.getPDFDict());
         }
+        // the per-page reports come out in page order.
+        boolean perPage = contentProfile != null || pageRowHandler != null;
+        for(int i=0;perPage && i<numPages;++i)
+        {
+            Page pg = pdfIn.getPage(i);
+            if (contentProfile != null && pg.getPDFDict().contains("Contents")) {
+                try {
+                    contentProfile.profilePage(i + 1, pg.getPDFDict().get("Contents"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (pageRowHandler != null) {
+                PageBreakdown row = new PageBreakdown(i + 1);
+                objEval.attributePage(pg.getPDFDict(), row);
+                pageRowHandler.accept(row);
+            }
+        }
         if(root.contains("Names"))
             objEval.processNameTrees((PDFDict)(root.get("Names")));
 
@@ -545,52 +1519,75 @@ public class PDFAuditor {
         if(root.contains("StructTreeRoot"))
             objEval.processStructTree((PDFDict)root.get("StructTreeRoot"));
 
-        final String[] cats = {XREF_TABLE, /*DOC_OVERHEAD, FILE_SIZE */ OBJECT_COMPRESSION, CONTENT_STREAMS,
-                XOBJECT_FORMS, FONTS, IMAGES, COLOR_SPACES, EXT_GRAPHIC_STATES, PATTERN, SHADING, STRUCTURE_INFO,
-                BOOKMARKS, NAMED_DESTINATIONS, LINK_ANNOTATIONS, ACRO_FORMS, COMMENTS_AND_3D, PIECE_INFO, THUMBNAILS,
-                WEB_CAPTURE, EMBEDDED_FILES
-        };
-
         //lump everything not accounted for into overhead.
         long accounted=0;
-        for (final String cat : cats)
-                accounted += toReturn.get(cat);
-        toReturn.put(DOC_OVERHEAD,docSize-accounted);
+        for (final AuditCategory cat : AuditCategory.VALUES)
+            if (cat.isAccounted())
+                accounted += totals[cat.ordinal()];
+        for (long custom : customTotals)
+            accounted += custom;
+        totals[AuditCategory.DOC_OVERHEAD.ordinal()] = docSize-accounted;
+
+        savingsPlan = plan ? new SavingsPlan(totals, objEval.getLooseObjectBytes(),
+                xrefIndex != null ? xrefIndex.getSize() : objEval.getHighestObjectId() + 1, objEval.hasStreamXRef(),
+                duplicateReport, objEval.getUnsubsetFontPrograms()) : null;
+
+        if (graph != null) {
+            graph.build();
+            retainedSizeReport = RetainedSizeReport.compute(graph, pageIds, topCount);
+        }
 
-        return toReturn;
+        sizeCacheHits = objEval.getSizeCache().getHits();
+        sizeCacheMisses = objEval.getSizeCache().getMisses();
+        nameTreeStats = objEval.getNameTreeStats();
+        hasOutline = root.contains("Outlines");
+        outlineNodes = objEval.getOutlineNodes();
+        outlineDepth = objEval.getOutlineDepth();
+        cappedStreams = objEval.getLengthCounter().getCappedStreams();
+
+        return totals;
     }
 
     /**
-     * Helper Method to initialize our categories in the 
-     * returned HashMap to 0
+     * The trailer's Size entry is one greater than the highest object number
+     * in the file, so it bounds the visited set without any resizing.
+     */
+    private static int expectedObjectCount(Document pdfIn) {
+        PDFDict trailer = pdfIn.getTrailer();
+        if (trailer != null && trailer.contains("Size")) {
+            PDFObject size = trailer.get("Size");
+            if (size instanceof PDFInteger)
+                return ((PDFInteger) size).getValue();
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the last audit's registered categories, and its outline item count
+     * and depth, to its map. The outline's bytes are already there, under
+     * BOOKMARKS.
+     */
+    private HashMap<String, Long> withExtras(HashMap<String, Long> auditInfo) {
+        for (int i = 0; i < customTotals.length; ++i)
+            auditInfo.put(classifier.getCustomLabels().get(i), customTotals[i]);
+        if (hasOutline) {
+            auditInfo.put(OUTLINE_NODES, outlineNodes);
+            auditInfo.put(OUTLINE_DEPTH, outlineDepth);
+        }
+        return auditInfo;
+    }
+
+    /**
+     * Helper Method to present the category totals as the
+     * HashMap returned to callers
      * 
      * @return HashMap<String, Long>
      */
-    private HashMap<String, Long> initializeMap(Long filesize) {
+    static HashMap<String, Long> toMap(long[] totals) {
         HashMap<String, Long> toReturn = new HashMap<>();
-        toReturn.put(FILE_SIZE, filesize);
-        toReturn.put(ACRO_FORMS, (long) 0);
-        toReturn.put(BOOKMARKS, (long) 0);
-        toReturn.put(COLOR_SPACES, (long) 0);
-        toReturn.put(COMMENTS_AND_3D, (long) 0);
-        toReturn.put(SHADING, (long) 0);
-        toReturn.put(PATTERN, (long) 0);
-        toReturn.put(CONTENT_STREAMS, (long) 0);
-        toReturn.put(DOC_OVERHEAD, (long) 0);
-        toReturn.put(EXT_GRAPHIC_STATES, (long) 0);
-        toReturn.put(FONTS, (long) 0);
-        toReturn.put(IMAGES, (long) 0);
-        toReturn.put(LINK_ANNOTATIONS, (long) 0);
-        toReturn.put(NAMED_DESTINATIONS, (long) 0);
-        toReturn.put(THUMBNAILS, (long) 0);
-        toReturn.put(STRUCTURE_INFO, (long) 0);
-        toReturn.put(XOBJECT_FORMS, (long) 0);
-        toReturn.put(PIECE_INFO, (long) 0);
-        toReturn.put(XREF_TABLE, (long) 0);
-        toReturn.put(WEB_CAPTURE, (long) 0);
-        toReturn.put(OBJECT_COMPRESSION, (long) 0);
-        toReturn.put(EMBEDDED_FILES, (long) 0);
+        for (final AuditCategory cat : AuditCategory.VALUES)
+            toReturn.put(cat.label, totals[cat.ordinal()]);
 
         return toReturn;
     }
-}
\ No newline at end of file
+}
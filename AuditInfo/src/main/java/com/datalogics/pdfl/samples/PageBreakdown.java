@@ -0,0 +1,73 @@
+/*
+ * PageBreakdown
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+/**
+ * The bytes one page pulls into the file, produced by the PDFAuditor while it
+ * walks the pages and handed out one row per page.
+ *
+ * Each object is counted on the first page that uses it. When a later page
+ * uses it again, its bytes go into that page's SHARED column instead, so a
+ * page with large SHARED bytes reuses resources rather than adding them.
+ */
+final class PageBreakdown {
+
+    enum Column { CONTENTS, RESOURCES, IMAGES, ANNOTATIONS, THUMBNAIL, SHARED }
+
+    static final Column[] COLUMNS = Column.values();
+    static final String CSV_HEADER = "page,contents,resources,images,annotations,thumbnail,shared,total";
+
+    private final int page;
+    private final long[] bytes = new long[COLUMNS.length];
+
+    PageBreakdown(int page)
+    {
+        this.page = page;
+    }
+
+    void add(Column column, long size)
+    {
+        bytes[column.ordinal()] += size;
+    }
+
+    /**
+     * @return the page number, counting from 1.
+     */
+    int getPage()
+    {
+        return page;
+    }
+
+    long get(Column column)
+    {
+        return bytes[column.ordinal()];
+    }
+
+    /**
+     * @return the bytes first counted on this page, leaving out shared ones.
+     */
+    long getTotal()
+    {
+        long total = 0;
+        for (Column column : COLUMNS)
+            if (column != Column.SHARED)
+                total += bytes[column.ordinal()];
+        return total;
+    }
+
+    String toCsv()
+    {
+        StringBuilder row = new StringBuilder().append(page);
+        for (long value : bytes)
+            row.append(',').append(value);
+        return row.append(',').append(getTotal()).toString();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * ReferenceGraph
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.util.Arrays;
+
+/**
+ * The indirect-object reference graph of a document, held in compressed sparse
+ * row (CSR) arrays indexed by object number. Node 0, which is never a live
+ * object in a PDF, is used as the root that refers to the trailer's objects.
+ *
+ * References are appended as they are found and packed into CSR form by
+ * build(). The graph stops growing once it reaches the number of references
+ * the memory budget allows and reports itself as truncated.
+ */
+final class ReferenceGraph {
+
+    static final int ROOT = 0;
+    static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    // bytes held per node (size, category, retained size, CSR offsets and the dominator
+    // tree's working arrays) and per reference (edge list, then successor and predecessor lists).
+    static final int BYTES_PER_NODE = 8 + 1 + 8 + 12 * 4;
+    static final int BYTES_PER_EDGE = 4 * 4;
+
+    private long[] sizes;
+    private byte[] categories;
+    private int nodeCount;
+
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int edgeCount;
+    private final long maxEdges;
+    private boolean truncated;
+
+    private int[] succOffsets;
+    private int[] succ;
+    private int[] predOffsets;
+    private int[] pred;
+
+    /**
+     * @param expectedNodes the expected number of objects, typically the trailer's Size.
+     * @param budget the number of bytes the graph and its dominator tree may use.
+     */
+    ReferenceGraph(int expectedNodes, long budget)
+    {
+        int nodes = Math.max(expectedNodes, 1);
+        sizes = new long[nodes];
+        categories = new byte[nodes];
+        Arrays.fill(categories, (byte) -1);
+        nodeCount = 1;
+        maxEdges = Math.max(0, Math.min(Integer.MAX_VALUE, (budget - (long) nodes * BYTES_PER_NODE) / BYTES_PER_EDGE));
+        int initialEdges = (int) Math.min(maxEdges, 4L * nodes);
+        edgeFrom = new int[Math.max(initialEdges, 16)];
+        edgeTo = new int[edgeFrom.length];
+    }
+
+    private void ensureNode(int id)
+    {
+        if (id >= sizes.length) {
+            int oldLength = sizes.length;
+            int newLength = Math.max(id + 1, oldLength * 2);
+            sizes = Arrays.copyOf(sizes, newLength);
+            categories = Arrays.copyOf(categories, newLength);
+            Arrays.fill(categories, oldLength, newLength, (byte) -1);
+        }
+        if (id >= nodeCount)
+            nodeCount = id + 1;
+    }
+
+    void setSize(int id, long size)
+    {
+        ensureNode(id);
+        sizes[id] = size;
+    }
+
+    /**
+     * Labels an object with the category that first recorded it; later labels are ignored.
+     */
+    void setCategory(int id, AuditCategory category)
+    {
+        ensureNode(id);
+        if (categories[id] < 0)
+            categories[id] = (byte) category.ordinal();
+    }
+
+    void addEdge(int from, int to)
+    {
+        if (edgeCount >= maxEdges) {
+            truncated = true;
+            return;
+        }
+        if (edgeCount == edgeFrom.length) {
+            int newLength = (int) Math.min(maxEdges, (long) edgeCount * 2);
+            edgeFrom = Arrays.copyOf(edgeFrom, newLength);
+            edgeTo = Arrays.copyOf(edgeTo, newLength);
+        }
+        ensureNode(Math.max(from, to));
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        ++edgeCount;
+    }
+
+    /**
+     * Packs the references into successor and predecessor CSR arrays and
+     * releases the edge list.
+     */
+    void build()
+    {
+        succOffsets = new int[nodeCount + 1];
+        predOffsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; ++e) {
+            ++succOffsets[edgeFrom[e] + 1];
+            ++predOffsets[edgeTo[e] + 1];
+        }
+        for (int n = 0; n < nodeCount; ++n) {
+            succOffsets[n + 1] += succOffsets[n];
+            predOffsets[n + 1] += predOffsets[n];
+        }
+        succ = new int[edgeCount];
+        pred = new int[edgeCount];
+        int[] succFill = Arrays.copyOf(succOffsets, nodeCount);
+        int[] predFill = Arrays.copyOf(predOffsets, nodeCount);
+        for (int e = 0; e < edgeCount; ++e) {
+            succ[succFill[edgeFrom[e]]++] = edgeTo[e];
+            pred[predFill[edgeTo[e]]++] = edgeFrom[e];
+        }
+        edgeFrom = null;
+        edgeTo = null;
+    }
+
+    int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    int getEdgeCount()
+    {
+        return edgeCount;
+    }
+
+    boolean isTruncated()
+    {
+        return truncated;
+    }
+
+    long getSize(int id)
+    {
+        return sizes[id];
+    }
+
+    /**
+     * @return the AuditCategory ordinal the object was recorded under, or -1.
+     */
+    int getCategory(int id)
+    {
+        return categories[id];
+    }
+
+    int[] getSuccOffsets()
+    {
+        return succOffsets;
+    }
+
+    int[] getSucc()
+    {
+        return succ;
+    }
+
+    int[] getPredOffsets()
+    {
+        return predOffsets;
+    }
+
+    int[] getPred()
+    {
+        return pred;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * RetainedSizeReport
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.PrintStream;
+
+/**
+ * Retained sizes computed from the dominator tree of a document's reference
+ * graph: what would be freed by removing an object, a page, or every object of
+ * a category, rather than which category happened to reach an object first.
+ *
+ * An object that was not recorded under a category itself belongs to the
+ * category of its nearest dominator that was. A category's retained size
+ * counts each of its objects once, at the topmost one that dominates the rest;
+ * objects of one category retained by another category are counted in both.
+ */
+final class RetainedSizeReport {
+
+    static final int DEFAULT_TOP_COUNT = 20;
+
+    private final long[] byCategory;
+    private final int[] topPages;
+    private final long[] topPageSizes;
+    private final int pageCount;
+    private final int[] topObjects;
+    private final long[] topObjectSizes;
+    private final int[] topObjectCategories;
+    private final int objectCount;
+    private final int referenceCount;
+    private final boolean truncated;
+
+    private RetainedSizeReport(long[] byCategory, int[] topPages, long[] topPageSizes, int pageCount,
+                               int[] topObjects, long[] topObjectSizes, int[] topObjectCategories,
+                               int objectCount, int referenceCount, boolean truncated)
+    {
+        this.byCategory = byCategory;
+        this.topPages = topPages;
+        this.topPageSizes = topPageSizes;
+        this.pageCount = pageCount;
+        this.topObjects = topObjects;
+        this.topObjectSizes = topObjectSizes;
+        this.topObjectCategories = topObjectCategories;
+        this.objectCount = objectCount;
+        this.referenceCount = referenceCount;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @param graph the built reference graph, with categories recorded.
+     * @param pageIds the object numbers of the page dictionaries, in page order.
+     * @param topCount how many pages and objects to list.
+     */
+    static RetainedSizeReport compute(ReferenceGraph graph, int[] pageIds, int topCount)
+    {
+        DominatorTree tree = DominatorTree.compute(graph);
+        final int n = graph.getNodeCount();
+
+        // depth-first order visits dominators first, so categories and the set of
+        // categories above each object can be pushed down in one pass.
+        byte[] category = new byte[n];
+        int[] categoriesAbove = new int[n];
+        long[] byCategory = new long[AuditCategory.VALUES.length];
+        category[ReferenceGraph.ROOT] = -1;
+        for (int i = 1; i < tree.getReached(); ++i) {
+            int v = tree.getVertex(i);
+            int dom = tree.getIdom(v);
+            int own = graph.getCategory(v);
+            category[v] = (byte) (own >= 0 ? own : category[dom]);
+            categoriesAbove[v] = categoriesAbove[dom] | (category[dom] >= 0 ? 1 << category[dom] : 0);
+            if (category[v] >= 0 && (categoriesAbove[v] & (1 << category[v])) == 0)
+                byCategory[category[v]] += tree.getRetained(v);
+        }
+
+        int count = Math.min(topCount, pageIds.length);
+        int[] topPages = new int[count];
+        long[] topPageSizes = new long[count];
+        for (int page = 0; page < pageIds.length; ++page) {
+            int id = pageIds[page];
+            insertTop(topPages, topPageSizes, page, id < n ? tree.getRetained(id) : 0);
+        }
+
+        int[] topObjects = new int[Math.min(topCount, n)];
+        long[] topObjectSizes = new long[topObjects.length];
+        for (int i = 1; i < tree.getReached(); ++i) {
+            int v = tree.getVertex(i);
+            insertTop(topObjects, topObjectSizes, v, tree.getRetained(v));
+        }
+        int[] topObjectCategories = new int[topObjects.length];
+        for (int i = 0; i < topObjects.length; ++i)
+            topObjectCategories[i] = category[topObjects[i]];
+
+        return new RetainedSizeReport(byCategory, topPages, topPageSizes, pageIds.length,
+                topObjects, topObjectSizes, topObjectCategories,
+                tree.getReached() - 1, graph.getEdgeCount(), graph.isTruncated());
+    }
+
+    /**
+     * Keeps ids/sizes sorted by descending size, dropping the smallest.
+     */
+    private static void insertTop(int[] ids, long[] sizes, int id, long size)
+    {
+        int pos = ids.length;
+        while (pos > 0 && sizes[pos - 1] < size)
+            --pos;
+        if (pos == ids.length)
+            return;
+        System.arraycopy(ids, pos, ids, pos + 1, ids.length - pos - 1);
+        System.arraycopy(sizes, pos, sizes, pos + 1, sizes.length - pos - 1);
+        ids[pos] = id;
+        sizes[pos] = size;
+    }
+
+    /**
+     * @return the retained size of the category, indexed by AuditCategory ordinal.
+     */
+    long getRetained(AuditCategory category)
+    {
+        return byCategory[category.ordinal()];
+    }
+
+    boolean isTruncated()
+    {
+        return truncated;
+    }
+
+    void print(PrintStream out)
+    {
+        out.println(String.format("Retained sizes (%,d objects, %,d references):", objectCount, referenceCount));
+        if (truncated)
+            out.println("  Reference graph exceeded its memory budget; retained sizes are incomplete.");
+        for (final AuditCategory cat : AuditCategory.VALUES) {
+            final long val = byCategory[cat.ordinal()];
+            if (val > 0)
+                out.println(String.format("%36s:\t%,8d", cat.label, val));
+        }
+
+        out.println(String.format("Largest pages (of %,d):", pageCount));
+        for (int i = 0; i < topPages.length && topPageSizes[i] > 0; ++i)
+            out.println(String.format("%36s:\t%,8d", "Page " + (topPages[i] + 1), topPageSizes[i]));
+
+        out.println("Largest objects:");
+        for (int i = 0; i < topObjects.length && topObjectSizes[i] > 0; ++i) {
+            String label = topObjectCategories[i] >= 0 ? AuditCategory.VALUES[topObjectCategories[i]].label : "";
+            out.println(String.format("%36s:\t%,8d\t%s", "Object " + topObjects[i], topObjectSizes[i], label));
+        }
+    }
+}
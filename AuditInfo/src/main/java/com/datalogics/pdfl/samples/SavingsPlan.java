@@ -0,0 +1,150 @@
+/*
+ * SavingsPlan
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What each size optimization would save on one document, estimated from
+ * its audit before any of them is run, and ranked so a batch optimizer can
+ * skip the documents where none pays off.
+ *
+ * The estimates rest on the audit's own accounting:
+ * - object streams: the document has neither object streams nor an xref
+ *   stream, so its dictionaries and arrays would compress about
+ *   OBJECT_STREAM_RATIO:1 and its classic xref table would shrink to about
+ *   XREF_STREAM_ENTRY bytes an entry;
+ * - thumbnails, PieceInfo and Web Capture data: dropping them saves what
+ *   the audit counted under their categories;
+ * - deduplication: the duplicate streams the audit found;
+ * - font subsetting: embedded font programs with no subset tag in their
+ *   name lose about FONT_SUBSET_SAVING of their bytes. Each program counts
+ *   once, and the extra copies deduplication already removes do not count.
+ */
+final class SavingsPlan {
+
+    static final int OBJECT_STREAM_RATIO = 4;
+    static final int XREF_STREAM_ENTRY = 2;
+    static final double FONT_SUBSET_SAVING = 0.65;
+
+    /** the savings below which a document is not worth optimizing. */
+    static final long DEFAULT_MIN_BYTES = 64 * 1024;
+    static final double DEFAULT_MIN_FRACTION = 0.05;
+
+    enum Optimization {
+        OBJECT_STREAMS("Compress objects into object streams"),
+        DROP_THUMBNAILS("Drop page thumbnails"),
+        DROP_PIECE_INFO("Drop PieceInfo"),
+        DROP_WEB_CAPTURE("Drop Web Capture info"),
+        DEDUPLICATE("Deduplicate streams"),
+        SUBSET_FONTS("Subset embedded fonts");
+
+        final String label;
+
+        Optimization(String label)
+        {
+            this.label = label;
+        }
+    }
+
+    static final Optimization[] OPTIMIZATIONS = Optimization.values();
+
+    private final long fileSize;
+    private final long[] savings = new long[OPTIMIZATIONS.length];
+
+    /**
+     * @param totals the audit totals, indexed by AuditCategory ordinal
+     * @param looseObjectBytes the bytes of indirect objects that are not streams
+     * @param objectCount the number of cross-reference entries
+     * @param hasStreamXRef whether the document already uses an xref stream
+     * @param duplicates the duplicate streams found, or null if they were not searched for
+     * @param unsubsetFontPrograms the encoded bytes of embedded font programs that are not subsets, by object number
+     */
+    SavingsPlan(long[] totals, long looseObjectBytes, long objectCount, boolean hasStreamXRef,
+                DuplicateFinder.DuplicateReport duplicates, Map<Integer, Long> unsubsetFontPrograms)
+    {
+        fileSize = totals[AuditCategory.FILE_SIZE.ordinal()];
+
+        if (!hasStreamXRef && totals[AuditCategory.OBJECT_COMPRESSION.ordinal()] == 0) {
+            long objects = looseObjectBytes - looseObjectBytes / OBJECT_STREAM_RATIO;
+            long xref = totals[AuditCategory.XREF_TABLE.ordinal()] - objectCount * XREF_STREAM_ENTRY;
+            savings[Optimization.OBJECT_STREAMS.ordinal()] = objects + Math.max(xref, 0);
+        }
+        savings[Optimization.DROP_THUMBNAILS.ordinal()] = totals[AuditCategory.THUMBNAILS.ordinal()];
+        savings[Optimization.DROP_PIECE_INFO.ordinal()] = totals[AuditCategory.PIECE_INFO.ordinal()];
+        savings[Optimization.DROP_WEB_CAPTURE.ordinal()] = totals[AuditCategory.WEB_CAPTURE.ordinal()];
+        if (duplicates != null)
+            savings[Optimization.DEDUPLICATE.ordinal()] = duplicates.getTotalReclaimable();
+        long unsubsetFontBytes = 0;
+        for (Map.Entry<Integer, Long> program : unsubsetFontPrograms.entrySet()) {
+            if (duplicates == null || !duplicates.isExtraCopy(program.getKey()))
+                unsubsetFontBytes += program.getValue();
+        }
+        savings[Optimization.SUBSET_FONTS.ordinal()] = (long) (unsubsetFontBytes * FONT_SUBSET_SAVING);
+    }
+
+    /**
+     * @return the estimated bytes the optimization would save.
+     */
+    long getSavings(Optimization optimization)
+    {
+        return savings[optimization.ordinal()];
+    }
+
+    long getTotalSavings()
+    {
+        long total = 0;
+        for (long value : savings)
+            total += value;
+        return total;
+    }
+
+    /**
+     * @return the optimizations that would save anything, largest saving first.
+     */
+    List<Optimization> getRanked()
+    {
+        List<Optimization> ranked = new ArrayList<>();
+        for (Optimization optimization : OPTIMIZATIONS)
+            if (savings[optimization.ordinal()] > 0)
+                ranked.add(optimization);
+        ranked.sort((a, b) -> Long.compare(savings[b.ordinal()], savings[a.ordinal()]));
+        return ranked;
+    }
+
+    /**
+     * @return whether the optimizations together save at least minBytes and at least minFraction of the file.
+     */
+    boolean isWorthwhile(long minBytes, double minFraction)
+    {
+        long total = getTotalSavings();
+        return total >= minBytes && fileSize > 0 && total >= minFraction * fileSize;
+    }
+
+    boolean isWorthwhile()
+    {
+        return isWorthwhile(DEFAULT_MIN_BYTES, DEFAULT_MIN_FRACTION);
+    }
+
+    void print(PrintStream out)
+    {
+        long total = getTotalSavings();
+        out.println(String.format("Savings plan (%s):", isWorthwhile() ? "worth optimizing" : "not worth optimizing"));
+        for (Optimization optimization : getRanked()) {
+            long value = savings[optimization.ordinal()];
+            out.println(String.format("%36s:\t%,8d\t%8.2f%%", optimization.label, value, value * 100.0 / fileSize));
+        }
+        out.println(String.format("%36s:\t%,8d\t%8.2f%%", "Total estimated savings", total, total * 100.0 / fileSize));
+    }
+}
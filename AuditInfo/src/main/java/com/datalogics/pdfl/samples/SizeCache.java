@@ -0,0 +1,84 @@
+/*
+ * SizeCache
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.PDFObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used memo of indirect object sizes, keyed by object ID.
+ *
+ * Each entry holds the serialized size of the object itself (with its direct
+ * children, but not the indirect objects it refers to) and the indirect objects
+ * it refers to, in the order they are written. Those two never change during an
+ * audit, so the ObjectEvaluator can size an object once and reuse the result for
+ * every category that reaches it, while still deciding afresh which of the
+ * referenced objects have already been claimed by another category.
+ */
+final class SizeCache {
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    static final class Entry {
+        final long size;
+        final PDFObject[] refs;
+
+        Entry(long size, PDFObject[] refs)
+        {
+            this.size = size;
+            this.refs = refs;
+        }
+    }
+
+    private final LinkedHashMap<Integer, Entry> entries;
+    private long hits;
+    private long misses;
+
+    SizeCache(final int capacity)
+    {
+        entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the memoized entry for this object ID, or null if it has not been sized or was evicted.
+     */
+    Entry get(int id)
+    {
+        Entry entry = entries.get(id);
+        if (entry == null)
+            ++misses;
+        else
+            ++hits;
+        return entry;
+    }
+
+    void put(int id, Entry entry)
+    {
+        entries.put(id, entry);
+    }
+
+    long getHits()
+    {
+        return hits;
+    }
+
+    long getMisses()
+    {
+        return misses;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * StreamLengthCounter
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.PDFStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the decoded length of PDF streams by reading them through one reused
+ * buffer, so the decoded data is never held on the heap as a whole.
+ *
+ * An optional cap stops counting pathological streams early; a capped count is
+ * a lower bound on the real length.
+ */
+final class StreamLengthCounter {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final long NO_CAP = Long.MAX_VALUE;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final long cap;
+    private int cappedStreams;
+
+    StreamLengthCounter(long cap)
+    {
+        this.cap = cap;
+    }
+
+    /**
+     * @return the number of bytes read from in, up to the cap.
+     */
+    long count(InputStream in) throws IOException
+    {
+        long total = 0;
+        while (total < cap) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, cap - total));
+            if (read < 0)
+                return total;
+            total += read;
+        }
+        if (in.read() >= 0)
+            ++cappedStreams;
+        return total;
+    }
+
+    /**
+     * @return the decoded length of the stream, up to the cap.
+     */
+    long filteredLength(PDFStream stream) throws IOException
+    {
+        try (InputStream in = stream.getFilteredStream()) {
+            return count(in);
+        }
+    }
+
+    /**
+     * @return how many streams were longer than the cap.
+     */
+    int getCappedStreams()
+    {
+        return cappedStreams;
+    }
+}
@@ -0,0 +1,789 @@
+/*
+ * XRefIndex
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A pure-Java reader for the cross-reference data of a PDF file. It maps the
+ * file into memory, follows the startxref / Prev chain through classic xref
+ * tables and xref streams, and derives the exact on-disk byte span of every
+ * object stored uncompressed in the file: from its offset to the next object
+ * offset, xref section or startxref keyword.
+ *
+ * Objects stored inside object streams have no span of their own; callers
+ * fall back to estimating them. Only FlateDecode (with or without PNG
+ * predictors) is supported for xref streams, which covers what writers emit.
+ *
+ * The index keeps the file mapped, so single objects can be read back
+ * without the library: the sampling audit reads the dictionaries of the
+ * objects it samples, and the object streams that hold them, this way.
+ */
+final class XRefIndex {
+
+    private static final int CHUNK_BITS = 30; // map large files 1GB at a time
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private static final int TAIL_SEARCH = 1024;
+    private static final int MAX_OBJECTS = 8388608; // the implementation limit from the PDF specification
+
+    private final long[] spans;
+    private final long[] offsets;
+    private final int[] containers;
+    private final long xrefTableBytes;
+    private final int size;
+    private final ByteBuffer[] chunks;
+    private final long length;
+
+    private XRefIndex(long[] spans, long[] offsets, int[] containers, long xrefTableBytes, int size,
+                      ByteBuffer[] chunks, long length)
+    {
+        this.spans = spans;
+        this.offsets = offsets;
+        this.containers = containers;
+        this.xrefTableBytes = xrefTableBytes;
+        this.size = size;
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    /**
+     * Memory-maps the file and reads its cross-reference data. The index
+     * holds two longs and an int per object, and the mapping for reading
+     * objects back.
+     */
+    static XRefIndex open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return parse(map(channel, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Maps a region of a file, such as a PDF embedded in a larger archive,
+     * in the pieces the index reads; the mapping outlives the channel.
+     */
+    static ByteBuffer[] map(FileChannel channel, long position, long size) throws IOException
+    {
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+        for (int i = 0; i < chunks.length; ++i) {
+            long start = (long) i << CHUNK_BITS;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + start, Math.min(CHUNK_MASK + 1, size - start));
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits a buffer, from its position to its limit, into the pieces the
+     * index reads. The buffer's position is not changed.
+     */
+    static ByteBuffer[] split(ByteBuffer buffer)
+    {
+        ByteBuffer whole = buffer.slice();
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((whole.remaining() + CHUNK_MASK) >>> CHUNK_BITS)];
+        for (int i = 0; i < chunks.length; ++i) {
+            int start = i << CHUNK_BITS;
+            whole.limit((int) Math.min(start + CHUNK_MASK + 1, whole.capacity())).position(start);
+            chunks[i] = whole.slice();
+        }
+        return chunks;
+    }
+
+    /**
+     * Reads the cross-reference data of a PDF held in a buffer, from its
+     * position to its limit. The buffer's position is not changed.
+     */
+    static XRefIndex parse(ByteBuffer buffer) throws IOException
+    {
+        return parse(split(buffer));
+    }
+
+    /**
+     * Reads the cross-reference data of a PDF held in pieces made by map or split.
+     */
+    static XRefIndex parse(ByteBuffer[] chunks) throws IOException
+    {
+        return new Parser(chunks, totalLength(chunks), null).parse();
+    }
+
+    static long totalLength(ByteBuffer[] chunks)
+    {
+        long length = 0;
+        for (ByteBuffer chunk : chunks)
+            length += chunk.remaining();
+        return length;
+    }
+
+    /**
+     * @return the exact number of bytes the object occupies in the file, from
+     * "n g obj" up to the next object, or -1 if the object is not stored
+     * uncompressed in the file.
+     */
+    long getSpan(int id)
+    {
+        return (id >= 0 && id < spans.length) ? spans[id] : -1;
+    }
+
+    /**
+     * @return the number of the object stream holding the object, or -1 if it is not in one.
+     */
+    int getContainer(int id)
+    {
+        return (id >= 0 && id < containers.length) ? containers[id] : -1;
+    }
+
+    /**
+     * An indirect object read back from the file. Strings and the contents of
+     * streams are not read; dictionaries are Maps keyed by name, arrays are
+     * Lists, names are Strings and numbers are Longs or Doubles.
+     */
+    static final class RawObject {
+        final Object value;
+        final boolean stream;
+
+        RawObject(Object value, boolean stream)
+        {
+            this.value = value;
+            this.stream = stream;
+        }
+
+        /**
+         * @return the object's dictionary (a stream's own dictionary), or null if it is not one.
+         */
+        @SuppressWarnings("unchecked")
+        Map<String, Object> getDict()
+        {
+            return value instanceof Map ? (Map<String, Object>) value : null;
+        }
+    }
+
+    /**
+     * Reads an object stored uncompressed in the file.
+     */
+    RawObject readObject(int id) throws IOException
+    {
+        Parser parser = parserAt(id);
+        Object value = parser.parseObject();
+        parser.skipWhitespace();
+        return new RawObject(value, parser.pos < length && parser.matchKeyword("stream"));
+    }
+
+    /**
+     * Reads and decodes the data of a stream stored uncompressed in the file.
+     * Only FlateDecode, optionally with PNG predictors, is supported.
+     */
+    byte[] readStream(int id) throws IOException
+    {
+        Parser parser = parserAt(id);
+        Object value = parser.parseObject();
+        parser.skipWhitespace();
+        if (!(value instanceof Map) || !parser.matchKeyword("stream"))
+            throw new IOException("object " + id + " is not a stream");
+        if (parser.byteAt(parser.pos) == '\r')
+            ++parser.pos;
+        if (parser.byteAt(parser.pos) == '\n')
+            ++parser.pos;
+        Map<String, Object> dict = Parser.asDict(value);
+        return Parser.decode(parser.readStreamData(dict), dict);
+    }
+
+    /**
+     * @return a parser positioned after the "n g obj" that starts the object.
+     */
+    private Parser parserAt(int id) throws IOException
+    {
+        long offset = getOffset(id);
+        if (offset < 0)
+            throw new IOException("object " + id + " is not stored uncompressed");
+        Parser parser = new Parser(chunks, length, offsets);
+        parser.pos = offset;
+        parser.readLong();
+        parser.readLong();
+        parser.skipWhitespace();
+        if (!parser.matchKeyword("obj"))
+            throw new IOException("no object " + id + " at " + offset);
+        return parser;
+    }
+
+    /**
+     * Reads the object at offset in a decoded object stream.
+     */
+    static Object parseObject(byte[] data, int offset) throws IOException
+    {
+        Parser parser = new Parser(new ByteBuffer[]{ByteBuffer.wrap(data)}, data.length, new long[0]);
+        parser.pos = offset;
+        return parser.parseObject();
+    }
+
+    /**
+     * Reads the first count integers of a decoded object stream: its pairs of
+     * object number and offset.
+     */
+    static long[] readIntegers(byte[] data, int count) throws IOException
+    {
+        Parser parser = new Parser(new ByteBuffer[]{ByteBuffer.wrap(data)}, data.length, new long[0]);
+        long[] values = new long[count];
+        for (int i = 0; i < count; ++i)
+            values[i] = parser.readLong();
+        return values;
+    }
+
+    /**
+     * @return the offset of the object in the file, or -1 if it is not stored uncompressed.
+     */
+    long getOffset(int id)
+    {
+        return (id >= 0 && id < offsets.length) ? offsets[id] : -1;
+    }
+
+    /**
+     * @return the bytes taken by classic xref tables and their trailers; zero
+     * for files that only use xref streams.
+     */
+    long getXRefTableBytes()
+    {
+        return xrefTableBytes;
+    }
+
+    /**
+     * @return one more than the highest object number in the cross-reference data.
+     */
+    int getSize()
+    {
+        return size;
+    }
+
+    private static final class Ref {
+        final int num;
+
+        Ref(int num)
+        {
+            this.num = num;
+        }
+    }
+
+    private static final class Parser {
+        private final ByteBuffer[] chunks;
+        private final long length;
+        private long pos;
+
+        private long[] offsets;
+        private int[] containers;
+        private final BitSet claimed = new BitSet();
+        private int highestId = -1;
+        private long[] boundaries = new long[64];
+        private int boundaryCount;
+        private long xrefTableBytes;
+
+        /**
+         * @param offsets the offsets of an index already read, used to find
+         * indirect stream lengths; or null to read the cross-reference data.
+         */
+        Parser(ByteBuffer[] chunks, long length, long[] offsets)
+        {
+            this.chunks = chunks;
+            this.length = length;
+            if (offsets != null)
+                this.offsets = offsets;
+            else {
+                this.offsets = new long[1024];
+                this.containers = new int[1024];
+                Arrays.fill(this.offsets, -1);
+                Arrays.fill(this.containers, -1);
+            }
+        }
+
+        XRefIndex parse() throws IOException
+        {
+            long start = findStartXRef();
+            Set<Long> seen = new HashSet<>();
+            ArrayDeque<Long> sections = new ArrayDeque<>();
+            sections.add(start);
+            while (!sections.isEmpty()) {
+                long section = sections.poll();
+                if (section < 0 || section >= length || !seen.add(section))
+                    continue; // broken or looping Prev chains end the walk
+
+                pos = section;
+                skipWhitespace();
+                Map<String, Object> trailer;
+                if (matchKeyword("xref")) {
+                    trailer = readXRefTable(section);
+                    // hybrid files: the table is searched first, then its xref stream, then Prev.
+                    Object xrefStm = trailer.get("XRefStm");
+                    if (xrefStm instanceof Long && seen.add((Long) xrefStm)) {
+                        pos = (Long) xrefStm;
+                        readXRefStream();
+                    }
+                } else
+                    trailer = readXRefStream();
+
+                Object prev = trailer.get("Prev");
+                if (prev instanceof Long)
+                    sections.add((Long) prev);
+            }
+            return new XRefIndex(computeSpans(), Arrays.copyOf(offsets, highestId + 1),
+                    Arrays.copyOf(containers, highestId + 1), xrefTableBytes, highestId + 1, chunks, length);
+        }
+
+        private long[] computeSpans()
+        {
+            addBoundary(length);
+            long[] sorted = Arrays.copyOf(boundaries, boundaryCount);
+            Arrays.sort(sorted);
+
+            long[] spans = new long[highestId + 1];
+            for (int id = 0; id <= highestId; ++id) {
+                long offset = offsets[id];
+                if (offset < 0) {
+                    spans[id] = -1;
+                    continue;
+                }
+                int index = Arrays.binarySearch(sorted, offset);
+                while (index + 1 < sorted.length && sorted[index + 1] == offset)
+                    ++index; // skip duplicate boundaries
+                spans[id] = (index + 1 < sorted.length) ? sorted[index + 1] - offset : length - offset;
+            }
+            return spans;
+        }
+
+        private long findStartXRef() throws IOException
+        {
+            final byte[] keyword = "startxref".getBytes(StandardCharsets.US_ASCII);
+            long stop = Math.max(0, length - TAIL_SEARCH);
+            for (long p = length - keyword.length; p >= stop; --p) {
+                if (matchesAt(p, keyword)) {
+                    addBoundary(p);
+                    pos = p + keyword.length;
+                    return readLong();
+                }
+            }
+            throw new IOException("startxref not found");
+        }
+
+        private Map<String, Object> readXRefTable(long start) throws IOException
+        {
+            addBoundary(start);
+            while (true) {
+                skipWhitespace();
+                if (matchKeyword("trailer"))
+                    break;
+                long first = readLong();
+                long count = readLong();
+                for (long k = 0; k < count; ++k) {
+                    long offset = readLong();
+                    readLong(); // generation
+                    skipWhitespace();
+                    int type = byteAt(pos++);
+                    if (type == 'n')
+                        entry(first + k, offset, -1);
+                    else if (type == 'f')
+                        entry(first + k, -1, -1);
+                    else
+                        throw new IOException("bad xref entry at " + (pos - 1));
+                }
+            }
+            Map<String, Object> trailer = asDict(parseObject());
+            xrefTableBytes += pos - start;
+            return trailer;
+        }
+
+        private Map<String, Object> readXRefStream() throws IOException
+        {
+            long objStart = pos;
+            addBoundary(objStart);
+            readLong();
+            readLong();
+            skipWhitespace();
+            if (!matchKeyword("obj"))
+                throw new IOException("no xref at " + objStart);
+            Map<String, Object> dict = asDict(parseObject());
+            skipWhitespace();
+            if (!matchKeyword("stream"))
+                throw new IOException("xref stream data missing at " + objStart);
+            if (byteAt(pos) == '\r')
+                ++pos;
+            if (byteAt(pos) == '\n')
+                ++pos;
+
+            byte[] data = decode(readStreamData(dict), dict);
+
+            int[] widths = new int[3];
+            List<Object> w = asArray(dict.get("W"));
+            for (int i = 0; i < 3 && i < w.size(); ++i)
+                widths[i] = (int) asLong(w.get(i));
+            List<Object> index = dict.containsKey("Index")
+                    ? asArray(dict.get("Index"))
+                    : Arrays.asList(0L, dict.get("Size"));
+
+            int rowSize = widths[0] + widths[1] + widths[2];
+            int p = 0;
+            for (int i = 0; i + 1 < index.size(); i += 2) {
+                long first = asLong(index.get(i));
+                long count = asLong(index.get(i + 1));
+                for (long k = 0; k < count && p + rowSize <= data.length; ++k) {
+                    long type = widths[0] == 0 ? 1 : field(data, p, widths[0]);
+                    long field2 = field(data, p + widths[0], widths[1]);
+                    p += rowSize;
+                    entry(first + k, type == 1 ? field2 : -1, type == 2 ? (int) field2 : -1);
+                }
+            }
+            return dict;
+        }
+
+        private byte[] readStreamData(Map<String, Object> dict) throws IOException
+        {
+            long dataStart = pos;
+            long dataLength = -1;
+            Object len = dict.get("Length");
+            if (len instanceof Long)
+                dataLength = (Long) len;
+            else if (len instanceof Ref && ((Ref) len).num < offsets.length && offsets[((Ref) len).num] >= 0) {
+                pos = offsets[((Ref) len).num];
+                readLong();
+                readLong();
+                skipWhitespace();
+                if (matchKeyword("obj"))
+                    dataLength = asLong(parseObject());
+            }
+            if (dataLength < 0) {
+                // the length is in an object we have not indexed yet; look for the end instead.
+                final byte[] endstream = "endstream".getBytes(StandardCharsets.US_ASCII);
+                long p = dataStart;
+                while (p < length && !matchesAt(p, endstream))
+                    ++p;
+                dataLength = p - dataStart;
+            }
+            if (dataLength > Integer.MAX_VALUE || dataStart + dataLength > length)
+                throw new IOException("bad xref stream length");
+
+            byte[] data = new byte[(int) dataLength];
+            for (int i = 0; i < data.length; ++i)
+                data[i] = (byte) byteAt(dataStart + i);
+            return data;
+        }
+
+        private static byte[] decode(byte[] data, Map<String, Object> dict) throws IOException
+        {
+            Object filter = dict.get("Filter");
+            if (filter instanceof List)
+                filter = ((List<?>) filter).isEmpty() ? null : ((List<?>) filter).get(0);
+            if (filter == null)
+                return data;
+            if (!"FlateDecode".equals(filter) && !"Fl".equals(filter))
+                throw new IOException("unsupported xref stream filter " + filter);
+
+            Inflater inflater = new Inflater();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            inflater.setInput(data);
+            try {
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    out.write(buffer, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+
+            Object parms = dict.get("DecodeParms");
+            if (parms instanceof List)
+                parms = ((List<?>) parms).isEmpty() ? null : ((List<?>) parms).get(0);
+            if (!(parms instanceof Map))
+                return out.toByteArray();
+            Map<?, ?> decodeParms = (Map<?, ?>) parms;
+            long predictor = decodeParms.containsKey("Predictor") ? asLong(decodeParms.get("Predictor")) : 1;
+            long columns = decodeParms.containsKey("Columns") ? asLong(decodeParms.get("Columns")) : 1;
+            return predictor >= 10 ? unpredictPNG(out.toByteArray(), (int) columns) : out.toByteArray();
+        }
+
+        /**
+         * Undoes PNG row prediction; each row is a filter type byte followed by columns bytes.
+         */
+        private static byte[] unpredictPNG(byte[] in, int columns)
+        {
+            int rows = in.length / (columns + 1);
+            byte[] out = new byte[rows * columns];
+            for (int r = 0; r < rows; ++r) {
+                int type = in[r * (columns + 1)];
+                int src = r * (columns + 1) + 1;
+                int dst = r * columns;
+                for (int c = 0; c < columns; ++c) {
+                    int raw = in[src + c] & 0xff;
+                    int left = c > 0 ? out[dst + c - 1] & 0xff : 0;
+                    int up = r > 0 ? out[dst - columns + c] & 0xff : 0;
+                    int upLeft = (r > 0 && c > 0) ? out[dst - columns + c - 1] & 0xff : 0;
+                    int value;
+                    switch (type) {
+                        case 1: value = raw + left; break;
+                        case 2: value = raw + up; break;
+                        case 3: value = raw + ((left + up) >> 1); break;
+                        case 4: {
+                            int pa = Math.abs(up - upLeft);
+                            int pb = Math.abs(left - upLeft);
+                            int pc = Math.abs(left + up - 2 * upLeft);
+                            value = raw + ((pa <= pb && pa <= pc) ? left : (pb <= pc) ? up : upLeft);
+                            break;
+                        }
+                        default: value = raw;
+                    }
+                    out[dst + c] = (byte) value;
+                }
+            }
+            return out;
+        }
+
+        private static long field(byte[] data, int p, int width)
+        {
+            long value = 0;
+            for (int i = 0; i < width; ++i)
+                value = (value << 8) | (data[p + i] & 0xff);
+            return value;
+        }
+
+        /**
+         * Records an xref entry: an offset for objects stored uncompressed, or
+         * the object stream holding it. The newest section is read first, so
+         * the first entry for an object number is the live one; every in-use
+         * offset still bounds its neighbours' spans.
+         */
+        private void entry(long id, long offset, int container) throws IOException
+        {
+            if (id < 0 || id >= MAX_OBJECTS)
+                throw new IOException("object number out of range: " + id);
+            if (offset >= length)
+                offset = -1;
+            if (offset >= 0)
+                addBoundary(offset);
+
+            int n = (int) id;
+            if (claimed.get(n))
+                return;
+            claimed.set(n);
+            if (n >= offsets.length) {
+                int oldLength = offsets.length;
+                offsets = Arrays.copyOf(offsets, Math.max(n + 1, oldLength * 2));
+                containers = Arrays.copyOf(containers, offsets.length);
+                Arrays.fill(offsets, oldLength, offsets.length, -1);
+                Arrays.fill(containers, oldLength, containers.length, -1);
+            }
+            offsets[n] = offset;
+            containers[n] = container;
+            if (n > highestId)
+                highestId = n;
+        }
+
+        private void addBoundary(long offset)
+        {
+            if (boundaryCount == boundaries.length)
+                boundaries = Arrays.copyOf(boundaries, boundaryCount * 2);
+            boundaries[boundaryCount++] = offset;
+        }
+
+        // --- lexing ---
+
+        private int byteAt(long p) throws IOException
+        {
+            if (p < 0 || p >= length)
+                throw new IOException("unexpected end of file");
+            return chunks[(int) (p >>> CHUNK_BITS)].get((int) (p & CHUNK_MASK)) & 0xff;
+        }
+
+        private boolean matchesAt(long p, byte[] text) throws IOException
+        {
+            if (p + text.length > length)
+                return false;
+            for (int i = 0; i < text.length; ++i)
+                if (byteAt(p + i) != text[i])
+                    return false;
+            return true;
+        }
+
+        private static boolean isWhitespace(int c)
+        {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+        }
+
+        private static boolean isDelimiter(int c)
+        {
+            return c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']'
+                    || c == '{' || c == '}' || c == '/' || c == '%';
+        }
+
+        private void skipWhitespace() throws IOException
+        {
+            while (pos < length) {
+                int c = byteAt(pos);
+                if (c == '%') {
+                    while (pos < length && byteAt(pos) != '\n' && byteAt(pos) != '\r')
+                        ++pos;
+                } else if (isWhitespace(c))
+                    ++pos;
+                else
+                    return;
+            }
+        }
+
+        private boolean matchKeyword(String keyword) throws IOException
+        {
+            byte[] text = keyword.getBytes(StandardCharsets.US_ASCII);
+            long end = pos + text.length;
+            if (!matchesAt(pos, text) || (end < length && !isWhitespace(byteAt(end)) && !isDelimiter(byteAt(end))))
+                return false;
+            pos = end;
+            return true;
+        }
+
+        private String readRegular() throws IOException
+        {
+            StringBuilder token = new StringBuilder();
+            while (pos < length) {
+                int c = byteAt(pos);
+                if (isWhitespace(c) || isDelimiter(c))
+                    break;
+                token.append((char) c);
+                ++pos;
+            }
+            return token.toString();
+        }
+
+        private long readLong() throws IOException
+        {
+            skipWhitespace();
+            String token = readRegular();
+            try {
+                return Long.parseLong(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("expected a number at " + pos + ", found '" + token + "'");
+            }
+        }
+
+        private Object parseObject() throws IOException
+        {
+            skipWhitespace();
+            int c = byteAt(pos);
+            if (c == '/') {
+                ++pos;
+                return readRegular();
+            }
+            if (c == '<' && byteAt(pos + 1) == '<') {
+                pos += 2;
+                Map<String, Object> dict = new HashMap<>();
+                while (true) {
+                    skipWhitespace();
+                    if (byteAt(pos) == '>') {
+                        pos += 2;
+                        return dict;
+                    }
+                    Object key = parseObject();
+                    dict.put(String.valueOf(key), parseObject());
+                }
+            }
+            if (c == '<') {
+                while (byteAt(pos) != '>')
+                    ++pos;
+                ++pos;
+                return new byte[0]; // string values are never needed here
+            }
+            if (c == '[') {
+                ++pos;
+                List<Object> array = new ArrayList<>();
+                while (true) {
+                    skipWhitespace();
+                    if (byteAt(pos) == ']') {
+                        ++pos;
+                        return array;
+                    }
+                    array.add(parseObject());
+                }
+            }
+            if (c == '(') {
+                int depth = 0;
+                do {
+                    c = byteAt(pos++);
+                    if (c == '\\')
+                        ++pos;
+                    else if (c == '(')
+                        ++depth;
+                    else if (c == ')')
+                        --depth;
+                } while (depth > 0);
+                return new byte[0];
+            }
+
+            String token = readRegular();
+            if (token.isEmpty())
+                throw new IOException("unexpected '" + (char) c + "' at " + pos);
+            if (token.equals("true") || token.equals("false"))
+                return Boolean.valueOf(token);
+            if (token.equals("null"))
+                return null;
+            if (token.indexOf('.') >= 0)
+                return Double.valueOf(token);
+            long number;
+            try {
+                number = Long.parseLong(token);
+            } catch (NumberFormatException e) {
+                return token; // a keyword we have no use for
+            }
+
+            // "num gen R" is a reference; anything else leaves the integer alone.
+            long mark = pos;
+            skipWhitespace();
+            String generation = readRegular();
+            if (!generation.isEmpty() && Character.isDigit(generation.charAt(0))) {
+                skipWhitespace();
+                if (pos < length && byteAt(pos) == 'R' && (pos + 1 >= length
+                        || isWhitespace(byteAt(pos + 1)) || isDelimiter(byteAt(pos + 1)))) {
+                    ++pos;
+                    return new Ref((int) number);
+                }
+            }
+            pos = mark;
+            return number;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Map<String, Object> asDict(Object obj) throws IOException
+        {
+            if (!(obj instanceof Map))
+                throw new IOException("expected a dictionary");
+            return (Map<String, Object>) obj;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<Object> asArray(Object obj) throws IOException
+        {
+            if (!(obj instanceof List))
+                throw new IOException("expected an array");
+            return (List<Object>) obj;
+        }
+
+        private static long asLong(Object obj) throws IOException
+        {
+            if (!(obj instanceof Long))
+                throw new IOException("expected an integer");
+            return (Long) obj;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * AuditBenchmarks
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the auditor benchmarks. Takes the usual JMH command-line options, and
+ * unless told otherwise reports allocation rates with the GC profiler and
+ * writes the results as JSON to target/jmh-result.json, ready to compare
+ * against an earlier run.
+ *
+ * The forked benchmark JVMs are given this JVM's java.library.path, so start
+ * it the way AuditInfo is started:
+ *
+ *   java -Djava.library.path=target/lib -jar target/benchmarks.jar [JMH options]
+ */
+class AuditBenchmarks {
+
+    static final String RESULT_FILE = "target/jmh-result.json";
+
+    /**
+     * @param args JMH command-line options.
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+
+        if (cli.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+        if (!cli.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!cli.getResult().hasValue())
+            options.result(RESULT_FILE);
+        String libraryPath = System.getProperty("java.library.path");
+        if (libraryPath != null)
+            options.jvmArgsAppend("-Djava.library.path=" + libraryPath);
+
+        new Runner(options.build()).run();
+    }
+}
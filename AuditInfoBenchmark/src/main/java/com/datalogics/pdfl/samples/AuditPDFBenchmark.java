@@ -0,0 +1,70 @@
+/*
+ * AuditPDFBenchmark
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end audits of each document shape, with sizes estimated from the
+ * objects and with sizes read from the cross-reference data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditPDFBenchmark {
+
+    @State(Scope.Thread)
+    public static class Shaped extends BenchmarkDocument {
+        @Param({"PAGES", "NAME_TREE", "IMAGES", "DEEP"})
+        public String shape;
+
+        @Param({"1000"})
+        public int count;
+
+        XRefIndex xrefIndex;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException
+        {
+            open(SyntheticDocuments.Shape.valueOf(shape), count);
+            xrefIndex = XRefIndex.open(path);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException
+        {
+            close();
+        }
+    }
+
+    @Benchmark
+    public long[] auditEstimated(Shaped state)
+    {
+        return new PDFAuditor().auditTotals(state.doc, state.filesize, null);
+    }
+
+    @Benchmark
+    public long[] auditExact(Shaped state)
+    {
+        return new PDFAuditor().auditTotals(state.doc, state.filesize, state.xrefIndex);
+    }
+
+    @Benchmark
+    public XRefIndex openXRefIndex(Shaped state) throws IOException
+    {
+        return XRefIndex.open(state.path);
+    }
+}
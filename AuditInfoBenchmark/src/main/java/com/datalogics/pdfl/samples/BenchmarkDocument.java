@@ -0,0 +1,58 @@
+/*
+ * BenchmarkDocument
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.Document;
+import com.datalogics.PDFL.Library;
+import com.datalogics.PDFL.PDFInteger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A synthetic document opened for a benchmark trial. The Library is per
+ * thread, so the states built on this are Scope.Thread: JMH then runs their
+ * setup, benchmark and teardown methods on the same thread.
+ */
+public abstract class BenchmarkDocument {
+
+    Library lib;
+    Document doc;
+    Path path;
+    long filesize;
+
+    void open(SyntheticDocuments.Shape shape, int count) throws IOException
+    {
+        path = SyntheticDocuments.write(shape, count);
+        filesize = Files.size(path);
+        lib = new Library();
+        doc = new Document(path.toString());
+    }
+
+    void close() throws IOException
+    {
+        if (doc != null)
+            doc.close();
+        if (lib != null)
+            lib.delete();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * @return a fresh evaluator over this document, as auditPDF would create.
+     */
+    ObjectEvaluator newEvaluator(long[] totals)
+    {
+        return new ObjectEvaluator(totals, ((PDFInteger) doc.getTrailer().get("Size")).getValue(), SizeCache.DEFAULT_CAPACITY,
+                StreamLengthCounter.NO_CAP, null);
+    }
+}
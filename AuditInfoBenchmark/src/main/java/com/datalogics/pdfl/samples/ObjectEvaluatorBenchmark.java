@@ -0,0 +1,116 @@
+/*
+ * ObjectEvaluatorBenchmark
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.PDFDict;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The auditor's hot paths on their own: the per-object Call made for every
+ * indirect object, sizing a deep object graph with descent, and walking the
+ * name trees. Each invocation uses a fresh evaluator, so nothing is answered
+ * from a previous invocation's visited set or size cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectEvaluatorBenchmark {
+
+    @State(Scope.Thread)
+    public static class Shaped extends BenchmarkDocument {
+        @Param({"PAGES", "NAME_TREE", "IMAGES", "DEEP"})
+        public String shape;
+
+        @Param({"1000"})
+        public int count;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException
+        {
+            open(SyntheticDocuments.Shape.valueOf(shape), count);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException
+        {
+            close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Deep extends BenchmarkDocument {
+        @Param({"100", "1000", "10000"})
+        public int count;
+
+        PDFDict chain;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException
+        {
+            open(SyntheticDocuments.Shape.DEEP, count);
+            chain = (PDFDict) doc.getRoot().get("Deep");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException
+        {
+            close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class NameTrees extends BenchmarkDocument {
+        @Param({"1000", "100000"})
+        public int count;
+
+        PDFDict names;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException
+        {
+            open(SyntheticDocuments.Shape.NAME_TREE, count);
+            names = (PDFDict) doc.getRoot().get("Names");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException
+        {
+            close();
+        }
+    }
+
+    @Benchmark
+    public long[] call(Shaped state)
+    {
+        long[] totals = new long[AuditCategory.VALUES.length];
+        state.doc.enumIndirectPDFObjects(state.newEvaluator(totals));
+        return totals;
+    }
+
+    @Benchmark
+    public long sizeObjDeep(Deep state)
+    {
+        return state.newEvaluator(new long[AuditCategory.VALUES.length]).sizeObj(state.chain, true);
+    }
+
+    @Benchmark
+    public long[] processNameTrees(NameTrees state)
+    {
+        long[] totals = new long[AuditCategory.VALUES.length];
+        state.newEvaluator(totals).processNameTrees(state.names);
+        return totals;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * SyntheticDocuments
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes the documents the benchmarks audit, so results do not depend on
+ * which sample files happen to be at hand. Every document is a plain PDF 1.4
+ * file with a classic cross-reference table; each shape stresses one part of
+ * the auditor.
+ */
+final class SyntheticDocuments {
+
+    enum Shape {
+        /** count pages, each with its own content stream and ExtGState and a shared font. */
+        PAGES,
+        /** a Dests name tree with count entries, in leaves of 64 under one level of kids. */
+        NAME_TREE,
+        /** count image XObjects with incompressible samples, every eighth one a copy of another. */
+        IMAGES,
+        /** a chain of count indirect dictionaries, each holding a deeply nested direct dictionary. */
+        DEEP
+    }
+
+    static final int NAME_TREE_LEAF = 64;
+    static final int DEEP_NESTING = 64;
+
+    private final List<byte[]> objects = new ArrayList<>();
+    private int catalog;
+
+    private SyntheticDocuments()
+    {
+    }
+
+    /**
+     * Writes a document of the given shape to a temporary file, deleted on exit.
+     */
+    static Path write(Shape shape, int count) throws IOException
+    {
+        SyntheticDocuments doc = new SyntheticDocuments();
+        switch (shape) {
+            case PAGES:
+                doc.pages(count);
+                break;
+            case NAME_TREE:
+                doc.nameTree(count);
+                break;
+            case IMAGES:
+                doc.images(count);
+                break;
+            case DEEP:
+                doc.deep(count);
+                break;
+        }
+        Path file = Files.createTempFile("audit-" + shape.name().toLowerCase() + "-" + count + "-", ".pdf");
+        file.toFile().deleteOnExit();
+        Files.write(file, doc.toBytes());
+        return file;
+    }
+
+    private int reserve()
+    {
+        objects.add(null);
+        return objects.size();
+    }
+
+    private void set(int id, String body)
+    {
+        objects.set(id - 1, body.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private int add(String body)
+    {
+        int id = reserve();
+        set(id, body);
+        return id;
+    }
+
+    private int addStream(String dict, byte[] data)
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(data.length + dict.length() + 32);
+        byte[] head = ("<<" + dict + "/Length " + data.length + ">>\nstream\n").getBytes(StandardCharsets.ISO_8859_1);
+        body.write(head, 0, head.length);
+        body.write(data, 0, data.length);
+        byte[] tail = "\nendstream".getBytes(StandardCharsets.ISO_8859_1);
+        body.write(tail, 0, tail.length);
+        objects.add(body.toByteArray());
+        return objects.size();
+    }
+
+    private static String ref(int id)
+    {
+        return id + " 0 R";
+    }
+
+    private interface PageBuilder {
+        String resources(int page);
+    }
+
+    /**
+     * Adds the catalog and a page tree of pages whose extra resources come from the builder.
+     *
+     * @return the page object numbers.
+     */
+    private int[] pageTree(int pageCount, String catalogExtras, PageBuilder builder)
+    {
+        catalog = reserve();
+        int pages = reserve();
+        int font = add("<</Type/Font/Subtype/Type1/BaseFont/Helvetica>>");
+        int[] pageIds = new int[pageCount];
+        StringBuilder kids = new StringBuilder();
+        for (int p = 0; p < pageCount; ++p) {
+            byte[] content = ("BT /F1 12 Tf 72 720 Td (Page " + (p + 1) + ") Tj ET\n"
+                    + "q 1 0 0 1 72 72 cm 0 0 m 468 0 l 468 648 l 0 648 l h S Q\n").getBytes(StandardCharsets.ISO_8859_1);
+            int contents = addStream("", content);
+            pageIds[p] = reserve();
+            set(pageIds[p], "<</Type/Page/Parent " + ref(pages) + "/MediaBox[0 0 612 792]/Contents " + ref(contents)
+                    + "/Resources<</Font<</F1 " + ref(font) + ">>" + builder.resources(p) + ">>>>");
+            kids.append(ref(pageIds[p])).append(' ');
+        }
+        set(pages, "<</Type/Pages/Kids[" + kids + "]/Count " + pageCount + ">>");
+        set(catalog, "<</Type/Catalog/Pages " + ref(pages) + catalogExtras + ">>");
+        return pageIds;
+    }
+
+    private void pages(int count)
+    {
+        pageTree(count, "", page -> "/ExtGState<</GS1 " + ref(add("<</Type/ExtGState/CA 0.5/ca 0.5/LW " + (page % 7 + 1) + ">>")) + ">>");
+    }
+
+    private void nameTree(int count)
+    {
+        int names = reserve();
+        int[] pageIds = pageTree(1, "/Names " + ref(names), page -> "");
+        StringBuilder kids = new StringBuilder();
+        for (int first = 0; first < count; first += NAME_TREE_LEAF) {
+            int last = Math.min(count, first + NAME_TREE_LEAF) - 1;
+            StringBuilder leaf = new StringBuilder("<</Limits[(").append(destName(first)).append(")(")
+                    .append(destName(last)).append(")]/Names[");
+            for (int n = first; n <= last; ++n)
+                leaf.append('(').append(destName(n)).append(")[").append(ref(pageIds[0]))
+                        .append("/XYZ 0 ").append(n % 792).append(" 0]");
+            kids.append(ref(add(leaf.append("]>>").toString()))).append(' ');
+        }
+        int dests = add("<</Kids[" + kids + "]>>");
+        set(names, "<</Dests " + ref(dests) + ">>");
+    }
+
+    private static String destName(int n)
+    {
+        return String.format("dest%08d", n);
+    }
+
+    private void images(int count)
+    {
+        Random random = new Random(count);
+        int[] imageIds = new int[count];
+        for (int i = 0; i < count; ++i) {
+            if (i % 8 == 7) {
+                // an exact copy of an earlier image, for the duplicate finder.
+                byte[] copy = objects.get(imageIds[i - 7] - 1);
+                objects.add(copy);
+                imageIds[i] = objects.size();
+                continue;
+            }
+            int side = 16 << (i % 4);
+            byte[] samples = new byte[side * side * 3];
+            random.nextBytes(samples);
+            imageIds[i] = addStream("/Type/XObject/Subtype/Image/Width " + side + "/Height " + side
+                    + "/ColorSpace/DeviceRGB/BitsPerComponent 8", samples);
+        }
+        int perPage = 4;
+        pageTree((count + perPage - 1) / perPage, "", page -> {
+            StringBuilder xobjects = new StringBuilder("/XObject<<");
+            for (int i = page * perPage; i < count && i < (page + 1) * perPage; ++i)
+                xobjects.append("/Im").append(i).append(' ').append(ref(imageIds[i]));
+            return xobjects.append(">>").toString();
+        });
+    }
+
+    private void deep(int count)
+    {
+        StringBuilder nested = new StringBuilder();
+        for (int d = 0; d < DEEP_NESTING; ++d)
+            nested.append("<</Level ").append(d).append("/Values[").append(d).append(" 0.5 /N").append(d).append(" (s)]/Next");
+        nested.append(" null");
+        for (int d = 0; d < DEEP_NESTING; ++d)
+            nested.append(">>");
+
+        int next = 0;
+        for (int i = 0; i < count; ++i) {
+            String link = next == 0 ? "" : "/Link " + ref(next);
+            next = add("<</Index " + i + link + "/Nested " + nested + ">>");
+        }
+        final int chain = next;
+        pageTree(1, "/Deep " + ref(chain), page -> "/ExtGState<</GS1 " + ref(add("<</Type/ExtGState/CA 1/Chain " + ref(chain) + ">>")) + ">>");
+    }
+
+    private byte[] toBytes()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, "%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        long[] offsets = new long[objects.size()];
+        for (int i = 0; i < objects.size(); ++i) {
+            offsets[i] = out.size();
+            write(out, (i + 1) + " 0 obj\n");
+            out.write(objects.get(i), 0, objects.get(i).length);
+            write(out, "\nendobj\n");
+        }
+        long xref = out.size();
+        StringBuilder table = new StringBuilder("xref\n0 ").append(objects.size() + 1).append("\n0000000000 65535 f \n");
+        for (long offset : offsets)
+            table.append(String.format("%010d 00000 n \n", offset));
+        table.append("trailer\n<</Size ").append(objects.size() + 1).append("/Root ").append(ref(catalog)).append(">>\nstartxref\n")
+                .append(xref).append("\n%%EOF\n");
+        write(out, table.toString());
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(bytes, 0, bytes.length);
+    }
+}
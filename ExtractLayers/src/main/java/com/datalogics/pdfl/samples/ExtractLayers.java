@@ -2,9 +2,14 @@ package com.datalogics.pdfl.samples;
 
 import com.datalogics.PDFL.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.EnumSet;
-import java.util.HashSet;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 
 /*
  *  This sample demonstrates how to extract the individual layers from a layered document.
@@ -20,99 +25,124 @@ import java.util.List;
 
 public class ExtractLayers
 {
-    private  static HashSet<String> findLayerNames(OptionalContentOrderArray ocoa)
-    {
-        HashSet<String> layerNames = new HashSet<>();
-        int arraylen = ocoa.getLength();
-        for(int i =0; i < arraylen;i++)
-        {
-            OptionalContentOrderNode node = ocoa.get(i);
-            if(node == null)
-                continue;
-
-            if (node instanceof OptionalContentOrderArray )
-                layerNames.addAll(findLayerNames((OptionalContentOrderArray)node));
-            else
-                layerNames.add(((OptionalContentOrderLeaf)node).getOptionalContentGroup().getName());
-        }
-
-        return layerNames;
-    }
-
     /**
-     * @param args Command-line arguments; an Optional path to an input PDF.
+     * @param args Command-line arguments; an Optional path to an input PDF, optionally preceded by
+     *             -threads n, to save up to n layers at once, -out dir, to write the layers to dir,
+     *             -visibility, to switch the other layers off instead of removing them (with -flatten, both), and
+     *             -elements, to remove content by pruning top-level page elements rather than filtering content
+     *             streams, which misses optional content nested in forms and annotations.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         System.out.println("ExtractLayers sample:");
 
-        String sInput = Library.getResourceDirectory() + "Sample_Input/Layers.pdf";
-
         Library lib = new Library();
 
         try {
-            if (args.length != 0)
-                sInput = args[0];
-            System.out.println("Input file: " + sInput);
-            Document doc = new Document(sInput);
-            HashSet<String> layerNames = new HashSet<>();
-            //Step 1. Get the Layer Names from the Optional Content Configuration(s)
-            List<OptionalContentConfig> cfgs = doc.getOptionalContentConfigs();
-            for (OptionalContentConfig cfg : cfgs) {
-                layerNames.addAll(findLayerNames(cfg.getOrder()));
-            }
-            doc.close();
-
-            //step 2. for every layer name we found, extract from every page all Forms and Containers associated with this layer name.
-            //NOTE: This assumes that all Optional Content Groups are at the top-level of the page's rather than nested within other Forms and Containers
-            // this assumption is not likely to hold with all real-world documents.
-            //NOTE: Annotations can also be part of Optional Content groups, but this version does not attempt to remove any annotations that are not
-            //part of the current layer.
-            for (String layer : layerNames) {
-                doc = new Document(sInput);
-                for (int i = 0; i < doc.getNumPages(); i++) {
-                    Page pg = doc.getPage(i);
-                    Content pgContent = pg.getContent();
-                    for (int j = pgContent.getNumElements() - 1; j > -1; j--) {
-                        boolean foundCurLayer = false;
-                        Element elem = pgContent.getElement(j);
-                        if (elem instanceof Form) {
-                            Form curForm = (Form) elem;
-                            OptionalContentMembershipDict md = curForm.getOptionalContentMembershipDict();
-                            if (md != null) {
-                                List<OptionalContentGroup> ocgs = md.getOptionalContentGroups();
+            run(args);
+        }
+        finally {
+            lib.delete();
+        }
+    }
 
-                                for (OptionalContentGroup ocg : ocgs) {
-                                    if (ocg.getName().equals(layer))
-                                        foundCurLayer = true;
-                                }
-                            }
-                            if (!foundCurLayer)
-                                pgContent.removeElement(j);
-                        } else if (elem instanceof Container) {
-                            Container curMC = (Container) elem;
-                            OptionalContentMembershipDict md = curMC.getOptionalContentMembershipDict();
-                            if (md != null) {
-                                List<OptionalContentGroup> ocgs = md.getOptionalContentGroups();
+    /**
+     * Extracts the layers on a thread that already has a Library, such as a
+     * SampleDaemon worker.
+     *
+     * @param args as for main.
+     */
+    public static void run(String[] args) throws IOException {
+        String sInput = Library.getResourceDirectory() + "Sample_Input/Layers.pdf";
+        int threads = 1;
+        String outDir = null;
+        boolean visibility = false;
+        boolean flatten = false;
+        boolean stream = true;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-out") && i + 1 < args.length)
+                outDir = args[++i];
+            else if (args[i].equals("-visibility"))
+                visibility = true;
+            else if (args[i].equals("-flatten"))
+                flatten = true;
+            else if (args[i].equals("-stream"))
+                stream = true; // the default; still accepted
+            else if (args[i].equals("-elements"))
+                stream = false;
+            else
+                sInput = args[i];
+        }
+        System.out.println("Input file: " + sInput);
+        // Step 1. open the document once and record the layers, and which pages and forms have optional content to filter
+        // (with -elements, which layers every page element belongs to). Only the layers themselves are needed to switch
+        // groups on and off.
+        boolean removeContent = !visibility || flatten;
+        boolean prune = removeContent && !stream;
+        boolean filter = removeContent && stream;
+        Document doc = new Document(sInput);
+        LayerIndex index = new LayerIndex(doc, prune, filter);
+        List<String> layerNames = index.getNames();
+        if (layerNames.isEmpty()) {
+            doc.close();
+            return;
+        }
 
-                                for (OptionalContentGroup ocg : ocgs) {
-                                    if (ocg.getName().equals(layer))
-                                        foundCurLayer = true;
-                                }
-                            }
-                            if (!foundCurLayer)
-                                pgContent.removeElement(j);
-                        } else {
-                            pgContent.removeElement(j);
-                        }
-                    }
-                    pg.updateContent();
+        // Step 2. for every layer, remove the other layers' content from a copy of the document by filtering each page's
+        // content stream, which reaches optional content nested within Forms and in annotations and removes annotations that
+        // are not part of the layer. With -visibility, leave its content alone and only set its default configuration to show
+        // just that layer (-flatten removes content as well). The copies are opened from memory, and the last layer reuses the
+        // indexed document itself.
+        //NOTE: -elements prunes the copy down to the top-level Forms and Containers recorded for that layer instead. That assumes
+        // all Optional Content Groups are at the top level of the page rather than nested within other Forms and Containers, and
+        // leaves annotations alone; neither is likely to hold with all real-world documents.
+        String prefix = sInput.replace(".pdf", "_");
+        if (outDir != null) {
+            Files.createDirectories(Paths.get(outDir));
+            prefix = Paths.get(outDir, Paths.get(prefix).getFileName().toString()).toString();
+        }
+        final String outPrefix = prefix;
+        LayerWorkers.Output output = layer -> outPrefix + layerNames.get(layer) + ".pdf";
+        final boolean showOnly = visibility;
+        ObjIntConsumer<Document> extract = (layerDoc, layer) -> {
+            if (prune)
+                index.prune(layerDoc, layer);
+            if (filter) {
+                try {
+                    index.filterContent(layerDoc, layer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                doc.save(EnumSet.of(SaveFlags.FULL), sInput.replace(".pdf", "_" + layer + ".pdf"));
-                doc.close();
             }
+            if (showOnly)
+                index.showOnly(layerDoc, layer);
+        };
+
+        byte[] input = layerNames.size() > 1 ? Files.readAllBytes(Paths.get(sInput)) : null;
+        if (threads > 1 && input != null) {
+            // every worker opens its own copy, so the indexed document is not needed any more.
+            doc.close();
+            try {
+                new LayerWorkers(index, extract, input, output).run(threads);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
         }
-        finally {
-            lib.delete();
+        try {
+            for (int layer = 0; layer < layerNames.size(); layer++) {
+                Document layerDoc = layer == layerNames.size() - 1 ? doc : new Document(new ByteArrayInputStream(input));
+                try {
+                    extract.accept(layerDoc, layer);
+                    layerDoc.save(EnumSet.of(SaveFlags.FULL), output.pathOf(layer));
+                } finally {
+                    if (layerDoc != doc)
+                        layerDoc.close();
+                }
+            }
+        } finally {
+            doc.close();
         }
     }
 }
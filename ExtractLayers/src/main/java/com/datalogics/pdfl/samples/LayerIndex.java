@@ -0,0 +1,578 @@
+/*
+ * LayerIndex
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Records, in one walk of a layered document, which layers every top-level
+ * Form and Container of every page belongs to, so that any number of layer
+ * documents can be pruned from the record without looking at optional
+ * content again, or, without touching content at all, each turned into a
+ * document whose default view shows just that layer. Layer documents can
+ * also be filtered at the content stream level instead, which needs no
+ * record of the elements, and reaches optional content nested in Form
+ * XObjects and annotation appearances. For that the index records which
+ * pages and forms have any optional content below them at all, so the
+ * rest are never decoded.
+ *
+ * A layer is an optional content group name from the Order arrays of the
+ * document's configurations; groups are told apart by their dictionary's
+ * object number, so each group's name is read only once, and groups that
+ * share a name make up one layer.
+ */
+final class LayerIndex {
+
+    /** the stream dictionary entries that describe the old encoding, and are not copied to a filtered form. */
+    private static final Set<String> ENCODING_KEYS = new HashSet<>(Arrays.asList("Length", "Filter", "DecodeParms", "DL"));
+
+    /** the appearances an annotation may have. */
+    private static final String[] APPEARANCE_KEYS = {"N", "R", "D"};
+
+    private final List<String> names = new ArrayList<>();
+
+    /** layers by OCG object number. */
+    private final Map<Integer, Integer> layerOfGroup = new HashMap<>();
+
+    /** layers of each membership dictionary already seen, by object number. */
+    private final Map<Integer, BitSet> layersOfMembership = new HashMap<>();
+
+    /** layers of each page's top-level elements; null where an element is in none and goes from every layer. */
+    private final BitSet[][] membership;
+
+    /** whether each page's resources or annotations hold any optional content. */
+    private final boolean[] pageHasOC;
+
+    /** whether each form XObject, by object number, holds any optional content, directly or in forms it uses. */
+    private final Map<Integer, Boolean> formHasOC = new HashMap<>();
+
+    /**
+     * @param elements whether to record page elements, which prune needs and showOnly does not.
+     * @param streams whether to record where optional content is, which filterContent needs.
+     */
+    LayerIndex(Document doc, boolean elements, boolean streams)
+    {
+        for (OptionalContentConfig cfg : doc.getOptionalContentConfigs())
+            addLayers(cfg.getOrder());
+
+        pageHasOC = streams ? new boolean[doc.getNumPages()] : null;
+        if (streams && !names.isEmpty()) {
+            for (int i = 0; i < pageHasOC.length; i++) {
+                PDFDict page = doc.getPage(i).getPDFDict();
+                pageHasOC[i] = hasOC(resourcesOf(page)) || annotationsHaveOC(page);
+            }
+        }
+
+        membership = elements ? new BitSet[doc.getNumPages()][] : null;
+        if (!elements || names.isEmpty())
+            return;
+        for (int i = 0; i < membership.length; i++) {
+            Content content = doc.getPage(i).getContent();
+            BitSet[] layers = new BitSet[content.getNumElements()];
+            for (int j = 0; j < layers.length; j++)
+                layers[j] = layersOf(content.getElement(j));
+            membership[i] = layers;
+        }
+    }
+
+    private void addLayers(OptionalContentOrderArray ocoa)
+    {
+        int arraylen = ocoa.getLength();
+        for (int i = 0; i < arraylen; i++) {
+            OptionalContentOrderNode node = ocoa.get(i);
+            if (node == null)
+                continue;
+
+            if (node instanceof OptionalContentOrderArray) {
+                addLayers((OptionalContentOrderArray) node);
+            } else {
+                OptionalContentGroup ocg = ((OptionalContentOrderLeaf) node).getOptionalContentGroup();
+                int id = ocg.getPDFDict().getID();
+                if (layerOfGroup.containsKey(id))
+                    continue;
+                String name = ocg.getName();
+                int layer = names.indexOf(name);
+                if (layer < 0) {
+                    layer = names.size();
+                    names.add(name);
+                }
+                layerOfGroup.put(id, layer);
+            }
+        }
+    }
+
+    private BitSet layersOf(Element elem)
+    {
+        OptionalContentMembershipDict md = null;
+        if (elem instanceof Form)
+            md = ((Form) elem).getOptionalContentMembershipDict();
+        else if (elem instanceof Container)
+            md = ((Container) elem).getOptionalContentMembershipDict();
+        if (md == null)
+            return null;
+
+        PDFDict mdDict = md.getPDFDict();
+        boolean shared = mdDict.getIndirect();
+        if (shared && layersOfMembership.containsKey(mdDict.getID()))
+            return layersOfMembership.get(mdDict.getID());
+
+        BitSet layers = new BitSet(names.size());
+        for (int layer = 0; layer < names.size(); layer++) {
+            if (isVisible(mdDict, layer))
+                layers.set(layer);
+        }
+        if (layers.isEmpty())
+            layers = null;
+        if (shared)
+            layersOfMembership.put(mdDict.getID(), layers);
+        return layers;
+    }
+
+    /**
+     * @return the layer names, in the order the configurations first list them.
+     */
+    List<String> getNames()
+    {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Removes from every page of doc, which must be a fresh copy of the
+     * indexed document, the top-level elements that are not in the layer,
+     * and rewrites only the pages that lost something. Optional content
+     * nested below those elements, and annotations, are left alone;
+     * filterContent reaches both, which is why ExtractLayers uses it unless
+     * told otherwise.
+     */
+    void prune(Document doc, int layer)
+    {
+        if (membership == null)
+            throw new IllegalStateException("page elements were not indexed");
+        for (int i = 0; i < membership.length; i++) {
+            BitSet[] layers = membership[i];
+            Page pg = doc.getPage(i);
+            Content pgContent = pg.getContent();
+            if (pgContent.getNumElements() != layers.length)
+                throw new IllegalStateException("page " + (i + 1) + " does not match the indexed document");
+
+            boolean changed = false;
+            for (int j = layers.length - 1; j > -1; j--) {
+                if (layers[j] == null || !layers[j].get(layer)) {
+                    pgContent.removeElement(j);
+                    changed = true;
+                }
+            }
+            if (changed)
+                pg.updateContent();
+        }
+    }
+
+    /**
+     * Leaves the content of doc, a copy of the indexed document, alone and
+     * instead makes its default configuration show only the layer: the
+     * layer's groups are turned on, every other group off, the Order array
+     * lists only the layer's groups, and automatic state changes that could
+     * turn other groups back on are dropped. As no content stream changes,
+     * saving copies every page's content as it is.
+     */
+    void showOnly(Document doc, int layer)
+    {
+        PDFDict ocProperties = (PDFDict) doc.getRoot().get("OCProperties");
+        if (ocProperties == null)
+            return;
+        PDFDict config = (PDFDict) ocProperties.get("D");
+        PDFArray ocgs = (PDFArray) ocProperties.get("OCGs");
+        if (config == null || ocgs == null)
+            return;
+
+        PDFArray on = new PDFArray(doc, false);
+        PDFArray off = new PDFArray(doc, false);
+        for (int i = 0; i < ocgs.getLength(); i++) {
+            PDFObject ocg = ocgs.get(i);
+            if (isInLayer(ocg, layer))
+                on.add(ocg);
+            else
+                off.add(ocg);
+        }
+        config.set("BaseState", new PDFName("ON", doc, false));
+        config.set("ON", on);
+        config.set("OFF", off);
+        config.remove("AS");
+
+        PDFObject order = config.get("Order");
+        if (order instanceof PDFArray) {
+            PDFArray kept = orderOf((PDFArray) order, layer, doc);
+            config.set("Order", kept != null ? kept : new PDFArray(doc, false));
+        }
+    }
+
+    private boolean isInLayer(PDFObject ocg, int layer)
+    {
+        Integer groupLayer = layerOfGroup.get(ocg.getID());
+        return groupLayer != null && groupLayer == layer;
+    }
+
+    /**
+     * @return a copy of an Order array holding only the layer's groups, with the labels and nesting of the
+     *         sub-arrays that still hold any; null if none is left.
+     */
+    private PDFArray orderOf(PDFArray order, int layer, Document doc)
+    {
+        PDFArray kept = new PDFArray(doc, false);
+        boolean hasGroup = false;
+        for (int i = 0; i < order.getLength(); i++) {
+            PDFObject entry = order.get(i);
+            if (entry instanceof PDFArray) {
+                PDFArray sub = orderOf((PDFArray) entry, layer, doc);
+                if (sub != null) {
+                    kept.add(sub);
+                    hasGroup = true;
+                }
+            } else if (entry instanceof PDFString) {
+                if (i == 0)
+                    kept.add(entry);
+            } else if (isInLayer(entry, layer)) {
+                kept.add(entry);
+                hasGroup = true;
+            }
+        }
+        return hasGroup ? kept : null;
+    }
+
+    /**
+     * Removes the optional content of other layers from every page of doc
+     * by rewriting the decoded content streams with an OCContentFilter,
+     * without building Content or Element objects. Form XObjects and
+     * annotation appearances with optional content of their own are
+     * rewritten the same way, however deeply they nest, and annotations
+     * that are optional content of another layer are removed. Marked
+     * content and XObjects outside any layer stay, and pages and forms the
+     * index found no optional content under are not decoded at all.
+     */
+    void filterContent(Document doc, int layer) throws IOException
+    {
+        if (pageHasOC == null)
+            throw new IllegalStateException("optional content was not indexed");
+        Map<Integer, PDFStream> forms = new HashMap<>();
+        for (int i = 0; i < pageHasOC.length; i++) {
+            if (!pageHasOC[i])
+                continue;
+            PDFDict page = doc.getPage(i).getPDFDict();
+            PDFDict resources = resourcesOf(page);
+            filterForms(resources, layer, doc, forms);
+            filterAnnotations(page, layer, doc, forms);
+
+            List<PDFStream> parts = new ArrayList<>();
+            PDFObject contents = page.get("Contents");
+            if (contents instanceof PDFStream) {
+                parts.add((PDFStream) contents);
+            } else if (contents instanceof PDFArray) {
+                PDFArray array = (PDFArray) contents;
+                for (int j = 0; j < array.getLength(); j++) {
+                    if (array.get(j) instanceof PDFStream)
+                        parts.add((PDFStream) array.get(j));
+                }
+            }
+            byte[] filtered = filter(parts, resources, layer);
+            if (filtered != null)
+                page.set("Contents", new PDFStream(new ByteArrayInputStream(filtered), doc, new PDFDict(doc, false), flate(doc)));
+        }
+    }
+
+    /**
+     * Points the resources at filtered copies of the forms they use that have optional content below them.
+     *
+     * @param forms the forms of doc filtered so far, by the object number of the original.
+     */
+    private void filterForms(PDFDict resources, int layer, Document doc, Map<Integer, PDFStream> forms) throws IOException
+    {
+        PDFDict xobjects = subDict(resources, "XObject");
+        if (xobjects == null)
+            return;
+        for (PDFObject key : xobjects.getKeys()) {
+            PDFObject xobject = xobjects.get((PDFName) key);
+            if (!(xobject instanceof PDFStream))
+                continue;
+            PDFStream form = filterForm((PDFStream) xobject, resources, layer, doc, forms);
+            if (form != xobject)
+                xobjects.set(((PDFName) key).getValue(), form);
+        }
+    }
+
+    /**
+     * @return a filtered copy of the form, or the form itself if nothing below it changes.
+     */
+    private PDFStream filterForm(PDFStream form, PDFDict inherited, int layer, Document doc, Map<Integer, PDFStream> forms)
+            throws IOException
+    {
+        int id = form.getID();
+        if (!formHasOC.getOrDefault(id, false))
+            return form;
+        PDFStream done = forms.get(id);
+        if (done != null)
+            return done;
+        forms.put(id, form); // a form that uses itself is filtered once
+
+        PDFDict dict = form.getDict();
+        PDFObject oc = dict.get("OC");
+        if (oc instanceof PDFDict && !isVisible((PDFDict) oc, layer))
+            return form; // every use of it is dropped anyway
+        PDFDict resources = subDict(dict, "Resources");
+        if (resources == null)
+            resources = inherited;
+        filterForms(resources, layer, doc, forms);
+        byte[] filtered = filter(Collections.singletonList(form), resources, layer);
+        if (filtered == null)
+            return form;
+
+        PDFDict attributes = new PDFDict(doc, false);
+        for (PDFObject key : dict.getKeys()) {
+            String name = ((PDFName) key).getValue();
+            if (!ENCODING_KEYS.contains(name))
+                attributes.set(name, dict.get(name));
+        }
+        PDFStream copy = new PDFStream(new ByteArrayInputStream(filtered), doc, attributes, flate(doc));
+        forms.put(id, copy);
+        return copy;
+    }
+
+    /**
+     * Removes the page's annotations that are optional content hidden in
+     * the layer, and filters the appearances of the rest.
+     */
+    private void filterAnnotations(PDFDict page, int layer, Document doc, Map<Integer, PDFStream> forms) throws IOException
+    {
+        PDFObject annots = page.get("Annots");
+        if (!(annots instanceof PDFArray))
+            return;
+        PDFArray array = (PDFArray) annots;
+        PDFArray kept = new PDFArray(doc, false);
+        boolean removed = false;
+        for (int i = 0; i < array.getLength(); i++) {
+            PDFObject annot = array.get(i);
+            if (annot instanceof PDFDict) {
+                PDFObject oc = ((PDFDict) annot).get("OC");
+                if (oc instanceof PDFDict && !isVisible((PDFDict) oc, layer)) {
+                    removed = true;
+                    continue;
+                }
+                PDFDict appearances = subDict((PDFDict) annot, "AP");
+                for (String key : APPEARANCE_KEYS)
+                    filterAppearance(appearances, key, layer, doc, forms);
+            }
+            kept.add(annot);
+        }
+        if (removed)
+            page.set("Annots", kept);
+    }
+
+    /**
+     * Filters an appearance, which is either a form or a dictionary of forms by appearance state.
+     */
+    private void filterAppearance(PDFDict appearances, String key, int layer, Document doc, Map<Integer, PDFStream> forms)
+            throws IOException
+    {
+        PDFObject appearance = appearances != null ? appearances.get(key) : null;
+        if (appearance instanceof PDFStream) {
+            PDFStream form = filterForm((PDFStream) appearance, null, layer, doc, forms);
+            if (form != appearance)
+                appearances.set(key, form);
+        } else if (appearance instanceof PDFDict) {
+            PDFDict states = (PDFDict) appearance;
+            for (PDFObject state : states.getKeys())
+                filterAppearance(states, ((PDFName) state).getValue(), layer, doc, forms);
+        }
+    }
+
+    /**
+     * @return the decoded parts filtered into one content stream, or null if nothing was dropped.
+     */
+    private byte[] filter(List<PDFStream> parts, PDFDict resources, int layer) throws IOException
+    {
+        ByteArrayOutputStream filtered = new ByteArrayOutputStream();
+        OCContentFilter filter = new OCContentFilter(new ResourceVisibility(
+                subDict(resources, "Properties"), subDict(resources, "XObject"), layer), filtered);
+        for (PDFStream part : parts) {
+            try (InputStream in = part.getFilteredStream()) {
+                filter.filter(in);
+            }
+        }
+        return filter.finish() ? filtered.toByteArray() : null;
+    }
+
+    private static PDFArray flate(Document doc)
+    {
+        PDFArray filters = new PDFArray(doc, false);
+        filters.add(new PDFName("FlateDecode", doc, false));
+        return filters;
+    }
+
+    /**
+     * @return whether anything the resources name is optional content, or
+     *         is a form with optional content below it.
+     */
+    private boolean hasOC(PDFDict resources)
+    {
+        PDFDict properties = subDict(resources, "Properties");
+        if (properties != null) {
+            for (PDFObject key : properties.getKeys()) {
+                if (OCMembership.isOptionalContent(properties.get((PDFName) key)))
+                    return true;
+            }
+        }
+        PDFDict xobjects = subDict(resources, "XObject");
+        if (xobjects != null) {
+            for (PDFObject key : xobjects.getKeys()) {
+                PDFObject xobject = xobjects.get((PDFName) key);
+                if (xobject instanceof PDFStream && (((PDFStream) xobject).getDict().get("OC") instanceof PDFDict
+                        || formHasOC((PDFStream) xobject, resources)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out, once per form, whether it has optional content below it.
+     *
+     * @param inherited the resources of whatever uses the form, for a form without its own.
+     */
+    private boolean formHasOC(PDFStream xobject, PDFDict inherited)
+    {
+        PDFDict dict = xobject.getDict();
+        PDFObject subtype = dict.get("Subtype");
+        if (!(subtype instanceof PDFName) || !((PDFName) subtype).getValue().equals("Form"))
+            return false;
+        int id = xobject.getID();
+        Boolean known = formHasOC.get(id);
+        if (known != null)
+            return known;
+
+        formHasOC.put(id, false); // a form that uses itself adds nothing
+        PDFDict resources = subDict(dict, "Resources");
+        boolean has = hasOC(resources != null ? resources : inherited);
+        formHasOC.put(id, has);
+        return has;
+    }
+
+    private boolean annotationsHaveOC(PDFDict page)
+    {
+        PDFObject annots = page.get("Annots");
+        if (!(annots instanceof PDFArray))
+            return false;
+        PDFArray array = (PDFArray) annots;
+        for (int i = 0; i < array.getLength(); i++) {
+            if (!(array.get(i) instanceof PDFDict))
+                continue;
+            PDFDict annot = (PDFDict) array.get(i);
+            if (annot.get("OC") instanceof PDFDict)
+                return true;
+            PDFDict appearances = subDict(annot, "AP");
+            for (String key : APPEARANCE_KEYS) {
+                if (appearanceHasOC(appearances != null ? appearances.get(key) : null))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean appearanceHasOC(PDFObject appearance)
+    {
+        if (appearance instanceof PDFStream)
+            return formHasOC((PDFStream) appearance, null);
+        if (appearance instanceof PDFDict) {
+            PDFDict states = (PDFDict) appearance;
+            for (PDFObject state : states.getKeys()) {
+                if (appearanceHasOC(states.get((PDFName) state)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the page's resources, which it may inherit from the page tree.
+     */
+    private static PDFDict resourcesOf(PDFDict page)
+    {
+        for (PDFDict node = page; node != null; ) {
+            PDFObject resources = node.get("Resources");
+            if (resources instanceof PDFDict)
+                return (PDFDict) resources;
+            PDFObject parent = node.get("Parent");
+            node = parent instanceof PDFDict ? (PDFDict) parent : null;
+        }
+        return null;
+    }
+
+    private static PDFDict subDict(PDFDict dict, String key)
+    {
+        PDFObject value = dict != null ? dict.get(key) : null;
+        return value instanceof PDFDict ? (PDFDict) value : null;
+    }
+
+    /**
+     * @return whether an optional content group or membership dictionary
+     *         leaves content visible in the layer, in which only the
+     *         layer's groups are on.
+     */
+    boolean isVisible(PDFDict oc, int layer)
+    {
+        return OCMembership.isVisible(oc, ocg -> isInLayer(ocg, layer));
+    }
+
+    /**
+     * Looks up the names a page's content uses in its resources, once each.
+     */
+    private final class ResourceVisibility implements OCContentFilter.Visibility {
+        private final PDFDict properties;
+        private final PDFDict xobjects;
+        private final int layer;
+        private final Map<String, Boolean> hidden = new HashMap<>();
+
+        ResourceVisibility(PDFDict properties, PDFDict xobjects, int layer)
+        {
+            this.properties = properties;
+            this.xobjects = xobjects;
+            this.layer = layer;
+        }
+
+        @Override
+        public boolean hidesProperty(String name)
+        {
+            return hides("P" + name, properties != null ? properties.get(name) : null);
+        }
+
+        @Override
+        public boolean hidesXObject(String name)
+        {
+            PDFObject xobject = xobjects != null ? xobjects.get(name) : null;
+            PDFObject oc = xobject instanceof PDFStream ? ((PDFStream) xobject).getDict().get("OC") : null;
+            return hides("X" + name, oc);
+        }
+
+        private boolean hides(String key, PDFObject oc)
+        {
+            Boolean result = hidden.get(key);
+            if (result == null) {
+                result = oc instanceof PDFDict && !isVisible((PDFDict) oc, layer);
+                hidden.put(key, result);
+            }
+            return result;
+        }
+    }
+}
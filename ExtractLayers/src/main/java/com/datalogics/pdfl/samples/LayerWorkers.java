@@ -0,0 +1,103 @@
+/*
+ * LayerWorkers
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Builds and saves layer documents on several threads at once. Every layer
+ * document is independent, so each worker takes the next layer, opens its
+ * own copy of the input from memory, turns it into the layer's document
+ * with the shared, read-only LayerIndex and saves it. A Library serves only
+ * the thread that made it, so each worker makes its own and releases it
+ * when the layers run out.
+ */
+final class LayerWorkers {
+
+    /** how to turn a layer's number into its output path. */
+    interface Output {
+        String pathOf(int layer);
+    }
+
+    private final LayerIndex index;
+    private final ObjIntConsumer<Document> extract;
+    private final byte[] input;
+    private final Output output;
+    private final AtomicInteger nextLayer = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param extract turns a copy of the input into the given layer's document.
+     */
+    LayerWorkers(LayerIndex index, ObjIntConsumer<Document> extract, byte[] input, Output output)
+    {
+        this.index = index;
+        this.extract = extract;
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Saves every layer, using at most parallelism threads, and returns when all are written.
+     *
+     * @throws RuntimeException the first failure any worker met; the other workers stop taking layers.
+     */
+    void run(int parallelism) throws InterruptedException
+    {
+        int count = Math.max(1, Math.min(parallelism, index.getNames().size()));
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(this::work, "LayerWorker-" + (i + 1));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+    }
+
+    private void work()
+    {
+        Library lib = null;
+        try {
+            lib = new Library();
+            int layers = index.getNames().size();
+            for (int layer = nextLayer.getAndIncrement(); layer < layers && failure.get() == null;
+                 layer = nextLayer.getAndIncrement()) {
+                Document doc = new Document(new ByteArrayInputStream(input));
+                try {
+                    extract.accept(doc, layer);
+                    doc.save(EnumSet.of(SaveFlags.FULL), output.pathOf(layer));
+                } finally {
+                    doc.close();
+                }
+            }
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            if (lib != null)
+                lib.delete();
+        }
+    }
+}
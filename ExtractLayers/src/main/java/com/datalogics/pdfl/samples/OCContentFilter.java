@@ -0,0 +1,399 @@
+/*
+ * OCContentFilter
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Rewrites a decoded content stream token by token, copying it through
+ * except for optional content that is hidden: marked-content sequences
+ * begun by /OC /name BDC whose property list is hidden, up to their
+ * matching EMC, and /name Do of hidden XObjects. Sequences nested inside
+ * kept ones are judged on their own, and everything nested inside a
+ * dropped one goes with it.
+ *
+ * Nothing is parsed into objects. The filter is a byte-at-a-time state
+ * machine that holds only the operands since the last operator, so it can
+ * write them out or drop them with the operator that follows, and it
+ * copies inline image data straight through. If a dropped sequence leaves
+ * the graphics state stack deeper or shallower than it found it, the
+ * missing q or Q operators are written in its place.
+ */
+final class OCContentFilter {
+
+    /** decides what is hidden, by resource name. */
+    interface Visibility {
+        /** @return whether the /Properties entry of that name is hidden optional content. */
+        boolean hidesProperty(String name);
+
+        /** @return whether the /XObject entry of that name is hidden optional content. */
+        boolean hidesXObject(String name);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte WHITE = 0;
+    private static final byte DELIMITER = 1;
+    private static final byte REGULAR = 2;
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        Arrays.fill(CLASSES, REGULAR);
+        for (char c : new char[] {0, '\t', '\n', '\f', '\r', ' '})
+            CLASSES[c] = WHITE;
+        for (char c : "()<>[]{}/%".toCharArray())
+            CLASSES[c] = DELIMITER;
+    }
+
+    private static final int KEY_BDC = key("BDC");
+    private static final int KEY_BMC = key("BMC");
+    private static final int KEY_EMC = key("EMC");
+    private static final int KEY_DO = key("Do");
+    private static final int KEY_SAVE = key("q");
+    private static final int KEY_RESTORE = key("Q");
+    private static final int KEY_ID = key("ID");
+    private static final int KEY_EI = key("EI");
+    private static final int KEY_TRUE = key("true");
+    // "false" is too long to pack; its first four bytes stand for it.
+    private static final int KEY_FALS = key("fals");
+    private static final int KEY_NULL = key("null");
+
+    // tokenizer states
+    private static final int NORMAL = 0;
+    private static final int TOKEN = 1;
+    private static final int NAME = 2;
+    private static final int STRING = 3;
+    private static final int HEX = 4;
+    private static final int LESS_THAN = 5;
+    private static final int GREATER_THAN = 6;
+    private static final int COMMENT = 7;
+    private static final int INLINE_DATA = 8;
+
+    private final Visibility visibility;
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** the bytes since the last operator, which go out or not with the next one. */
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+
+    private int state;
+    private int token;
+    private int tokenLength;
+    private final StringBuilder name = new StringBuilder();
+    private int nameEscape;
+    private int stringDepth;
+    private boolean escape;
+    private int inlineMatch;
+    /** nesting of arrays and dictionaries among the operands, whose contents are not operands. */
+    private int nesting;
+    private String lastOperand;
+    private String previousOperand;
+
+    /** marked-content nesting inside the sequence being dropped; 0 when copying. */
+    private int dropDepth;
+    /** q less Q inside the sequence being dropped. */
+    private int droppedSaves;
+    private boolean changed;
+
+    OCContentFilter(Visibility visibility, OutputStream out)
+    {
+        this.visibility = visibility;
+        this.out = out;
+    }
+
+    static int key(String op)
+    {
+        int key = 0;
+        for (int i = 0; i < op.length(); i++)
+            key = key << 8 | op.charAt(i);
+        return key;
+    }
+
+    /**
+     * Filters one content stream. The parts of a page's contents are
+     * separate streams that split only between tokens, and a marked-content
+     * sequence may span them, so they go through one filter in turn.
+     */
+    void filter(InputStream in) throws IOException
+    {
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            for (int i = 0; i < read; i++)
+                accept(buffer[i] & 0xFF);
+        }
+        accept('\n');
+    }
+
+    /**
+     * Writes out what is still pending at the end of the contents.
+     *
+     * @return whether anything was dropped.
+     */
+    boolean finish() throws IOException
+    {
+        if (state == TOKEN)
+            endToken();
+        if (dropDepth == 0)
+            flushPending();
+        else
+            restoreSaves(); // the contents ended inside a dropped sequence
+        pendingLength = 0;
+        dropDepth = 0;
+        state = NORMAL;
+        out.flush();
+        return changed;
+    }
+
+    private void accept(int b) throws IOException
+    {
+        if (state == INLINE_DATA) {
+            inlineData(b);
+            return;
+        }
+        if (state == TOKEN && CLASSES[b] != REGULAR) {
+            endToken(); // and look at this byte again
+            if (state == INLINE_DATA) {
+                inlineData(b);
+                return;
+            }
+        }
+
+        append(b);
+        switch (state) {
+            case NORMAL:
+                if (CLASSES[b] == REGULAR) {
+                    state = TOKEN;
+                    token = b;
+                    tokenLength = 1;
+                } else if (b == '/') {
+                    state = NAME;
+                    name.setLength(0);
+                    nameEscape = -1;
+                } else if (b == '(') {
+                    state = STRING;
+                    stringDepth = 1;
+                    escape = false;
+                } else if (b == '<') {
+                    state = LESS_THAN;
+                } else if (b == '>') {
+                    state = GREATER_THAN;
+                } else if (b == '[') {
+                    ++nesting;
+                } else if (b == ']') {
+                    endGroup();
+                } else if (b == '%') {
+                    state = COMMENT;
+                }
+                break;
+            case TOKEN:
+                if (++tokenLength <= 4)
+                    token = token << 8 | b;
+                break;
+            case NAME:
+                if (CLASSES[b] != REGULAR) {
+                    // the byte ending the name was appended; it is looked at again as the start of what follows.
+                    --pendingLength;
+                    state = NORMAL;
+                    operand(name.toString());
+                    accept(b);
+                } else {
+                    appendToName(b);
+                }
+                break;
+            case STRING:
+                if (escape)
+                    escape = false;
+                else if (b == '\\')
+                    escape = true;
+                else if (b == '(')
+                    ++stringDepth;
+                else if (b == ')' && --stringDepth == 0)
+                    endOperand();
+                break;
+            case LESS_THAN:
+                if (b == '<') {
+                    ++nesting; // a dictionary
+                    state = NORMAL;
+                } else {
+                    state = b == '>' ? NORMAL : HEX;
+                    if (state == NORMAL)
+                        operand(null);
+                }
+                break;
+            case GREATER_THAN:
+                state = NORMAL;
+                if (b == '>')
+                    endGroup();
+                else
+                    accept(unappend());
+                break;
+            case HEX:
+                if (b == '>')
+                    endOperand();
+                break;
+            case COMMENT:
+                if (b == '\r' || b == '\n')
+                    state = NORMAL;
+                break;
+        }
+    }
+
+    private void appendToName(int b)
+    {
+        // #xx escapes are decoded, so names compare with resource dictionary keys.
+        if (nameEscape >= 0) {
+            int digit = Character.digit(b, 16);
+            if (nameEscape == 0) {
+                nameEscape = 0x100 | digit << 4;
+                return;
+            }
+            name.append((char) ((nameEscape & 0xF0) | digit));
+            nameEscape = -1;
+        } else if (b == '#') {
+            nameEscape = 0;
+        } else {
+            name.append((char) b);
+        }
+    }
+
+    private int unappend()
+    {
+        return pending[--pendingLength] & 0xFF;
+    }
+
+    private void endOperand()
+    {
+        state = NORMAL;
+        operand(null);
+    }
+
+    private void endGroup()
+    {
+        if (nesting > 0 && --nesting == 0)
+            operand(null);
+    }
+
+    /**
+     * Notes an operand, or null for one that is not a name. Only the last two matter.
+     */
+    private void operand(String value)
+    {
+        if (nesting > 0)
+            return;
+        previousOperand = lastOperand;
+        lastOperand = value;
+    }
+
+    private void endToken() throws IOException
+    {
+        state = NORMAL;
+        int key = tokenLength > 4 ? -1 : token;
+        int first = token >>> ((Math.min(tokenLength, 4) - 1) * 8) & 0xFF;
+        if ((first >= '0' && first <= '9') || first == '+' || first == '-' || first == '.'
+                || key == KEY_TRUE || key == KEY_NULL || (tokenLength == 5 && token == KEY_FALS)) {
+            operand(null);
+            return;
+        }
+        if (nesting > 0)
+            return; // not an operator; content streams have none inside arrays or dictionaries.
+        operator(key);
+    }
+
+    private void operator(int key) throws IOException
+    {
+        String tag = previousOperand;
+        String operand = lastOperand;
+        previousOperand = null;
+        lastOperand = null;
+
+        if (dropDepth > 0) {
+            if (key == KEY_BDC || key == KEY_BMC) {
+                ++dropDepth;
+            } else if (key == KEY_EMC && --dropDepth == 0) {
+                restoreSaves();
+            } else if (key == KEY_SAVE) {
+                ++droppedSaves;
+            } else if (key == KEY_RESTORE) {
+                --droppedSaves;
+            }
+            pendingLength = 0;
+        } else if (key == KEY_BDC && "OC".equals(tag) && operand != null && visibility.hidesProperty(operand)) {
+            dropDepth = 1;
+            droppedSaves = 0;
+            pendingLength = 0;
+            changed = true;
+        } else if (key == KEY_DO && operand != null && visibility.hidesXObject(operand)) {
+            pendingLength = 0;
+            changed = true;
+        } else {
+            flushPending();
+        }
+
+        if (key == KEY_ID) {
+            // one whitespace byte separates ID from the data, and is not part of it.
+            state = INLINE_DATA;
+            inlineMatch = -1;
+        }
+    }
+
+    /**
+     * Keeps the graphics state stack as deep as the dropped sequence left it.
+     */
+    private void restoreSaves() throws IOException
+    {
+        for (; droppedSaves > 0; --droppedSaves)
+            out.write(new byte[] {'\n', 'q'});
+        for (; droppedSaves < 0; ++droppedSaves)
+            out.write(new byte[] {'\n', 'Q'});
+    }
+
+    /**
+     * Copies inline image data, or skips it inside a dropped sequence, up to
+     * the whitespace, EI and whitespace or delimiter that end it.
+     */
+    private void inlineData(int b) throws IOException
+    {
+        if (inlineMatch == 3 && CLASSES[b] != REGULAR) {
+            state = NORMAL;
+            operator(KEY_EI);
+            accept(b);
+            return;
+        }
+        if (dropDepth == 0)
+            out.write(b);
+        if (inlineMatch < 0)
+            inlineMatch = 0;
+        else if (CLASSES[b] == WHITE)
+            inlineMatch = 1;
+        else if (b == 'E' && inlineMatch == 1)
+            inlineMatch = 2;
+        else if (b == 'I' && inlineMatch == 2)
+            inlineMatch = 3;
+        else
+            inlineMatch = 0;
+    }
+
+    private void append(int b)
+    {
+        if (pendingLength == pending.length)
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        pending[pendingLength++] = (byte) b;
+    }
+
+    private void flushPending() throws IOException
+    {
+        out.write(pending, 0, pendingLength);
+        pendingLength = 0;
+    }
+}
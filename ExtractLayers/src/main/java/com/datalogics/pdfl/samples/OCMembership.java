@@ -0,0 +1,126 @@
+/*
+ * OCMembership
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.*;
+
+/**
+ * Decides whether optional content is visible, given which groups are on.
+ * Content may name a group directly or an optional content membership
+ * dictionary, which is visible according to its visibility expression
+ * (/VE) if it has one, and otherwise to its policy (/P: AllOn, AnyOn,
+ * AnyOff or AllOff, AnyOn by default) over its groups (/OCGs).
+ */
+final class OCMembership {
+
+    /** how deeply visibility expressions may nest before they are taken to be broken. */
+    private static final int MAX_EXPRESSION_DEPTH = 32;
+
+    /** which groups are on. */
+    interface GroupState {
+        boolean isOn(PDFObject ocg);
+    }
+
+    private OCMembership()
+    {
+    }
+
+    /**
+     * @return whether a group or membership dictionary is an optional content dictionary at all.
+     */
+    static boolean isOptionalContent(PDFObject oc)
+    {
+        String type = typeOf(oc);
+        return "OCG".equals(type) || "OCMD".equals(type);
+    }
+
+    /**
+     * @return whether content belonging to the group or membership dictionary is visible.
+     */
+    static boolean isVisible(PDFDict oc, GroupState state)
+    {
+        if (!"OCMD".equals(typeOf(oc)))
+            return state.isOn(oc);
+
+        PDFObject expression = oc.get("VE");
+        if (expression instanceof PDFArray)
+            return evaluate(expression, state, 0);
+
+        PDFObject ocgs = oc.get("OCGs");
+        if (ocgs instanceof PDFDict)
+            return isPolicyMet(oc, state.isOn(ocgs) ? 1 : 0, 1);
+        if (!(ocgs instanceof PDFArray))
+            return true; // a membership dictionary without groups has no effect
+        PDFArray groups = (PDFArray) ocgs;
+        int on = 0;
+        int count = 0;
+        for (int i = 0; i < groups.getLength(); i++) {
+            PDFObject ocg = groups.get(i);
+            if (!(ocg instanceof PDFDict))
+                continue; // null entries are ignored
+            count++;
+            if (state.isOn(ocg))
+                on++;
+        }
+        return count == 0 || isPolicyMet(oc, on, count);
+    }
+
+    private static boolean isPolicyMet(PDFDict ocmd, int on, int count)
+    {
+        PDFObject policy = ocmd.get("P");
+        String p = policy instanceof PDFName ? ((PDFName) policy).getValue() : "AnyOn";
+        switch (p) {
+            case "AllOn":
+                return on == count;
+            case "AnyOff":
+                return on < count;
+            case "AllOff":
+                return on == 0;
+            default:
+                return on > 0;
+        }
+    }
+
+    /**
+     * Evaluates a visibility expression: a group, or an array of /And, /Or
+     * or /Not and the expressions it applies to.
+     */
+    private static boolean evaluate(PDFObject expression, GroupState state, int depth)
+    {
+        if (expression instanceof PDFDict)
+            return state.isOn(expression);
+        if (!(expression instanceof PDFArray) || depth > MAX_EXPRESSION_DEPTH)
+            return true;
+
+        PDFArray array = (PDFArray) expression;
+        PDFObject op = array.getLength() > 0 ? array.get(0) : null;
+        String operator = op instanceof PDFName ? ((PDFName) op).getValue() : "";
+        if (operator.equals("Not"))
+            return array.getLength() < 2 || !evaluate(array.get(1), state, depth + 1);
+
+        boolean and = operator.equals("And");
+        if (!and && !operator.equals("Or"))
+            return true;
+        for (int i = 1; i < array.getLength(); i++) {
+            if (evaluate(array.get(i), state, depth + 1) != and)
+                return !and;
+        }
+        return and;
+    }
+
+    private static String typeOf(PDFObject oc)
+    {
+        if (!(oc instanceof PDFDict))
+            return null;
+        PDFObject type = ((PDFDict) oc).get("Type");
+        return type instanceof PDFName ? ((PDFName) type).getValue() : null;
+    }
+}
@@ -399,11 +399,22 @@ public class FormWalker {
 		Library lib = new Library();
 
 		try {
-			String sInput = Library.getResourceDirectory() + "Sample_Input/AcroForm.pdf";
-			if (args.length > 0)
-				sInput = args[0];
+			run(args);
+		} finally {
+			lib.delete();
+		}
+	}
 
-			Document doc = new Document(sInput);
+	/**
+	 * Walks the form fields on a thread that already has a Library, such as a SampleDaemon worker.
+	 */
+	public static void run(String[] args) {
+		String sInput = Library.getResourceDirectory() + "Sample_Input/AcroForm.pdf";
+		if (args.length > 0)
+			sInput = args[0];
+
+		Document doc = new Document(sInput);
+		try {
 			System.out.printf("Opened document %s%n", sInput);
 
 			if (doc.getHasSignature())
@@ -432,7 +443,7 @@ public class FormWalker {
 			System.out.println("Done.");
 
 		} finally {
-			lib.delete();
+			doc.close();
 		}
 	}
 }
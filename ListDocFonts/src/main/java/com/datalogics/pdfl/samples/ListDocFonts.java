@@ -18,6 +18,17 @@ public class ListDocFonts {
 
 		System.out.println("Initialized the library.");
 
+		try {
+			run(args);
+		} finally {
+			lib.delete();
+		}
+	}
+
+	/**
+	 * Lists the fonts on a thread that already has a Library, such as a SampleDaemon worker.
+	 */
+	public static void run(String[] args) throws Exception {
 		String sInput = "../../Resources/Sample_Input/sample.pdf";
 
 		if (args.length > 0)
@@ -55,7 +66,7 @@ public class ListDocFonts {
 				}
 			}
 		} finally {
-			lib.delete();
+			doc.close();
 		}
 	}
 };
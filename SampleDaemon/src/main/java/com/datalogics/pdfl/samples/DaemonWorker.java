@@ -0,0 +1,109 @@
+/*
+ * DaemonWorker
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import com.datalogics.PDFL.Library;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread that initializes its own Library once and then runs jobs from the
+ * daemon's queue until told to stop, so no job pays for the library's start.
+ *
+ * A job that outlives its timeout is answered as timed out and the worker is
+ * abandoned: the daemon starts a replacement straight away, and this thread
+ * exits, releasing its Library, once the library call it is stuck in returns.
+ * A worker whose Library cannot be created exits straight away and tells
+ * the daemon why.
+ */
+final class DaemonWorker extends Thread {
+
+    /** put on the queue once per worker to stop it. */
+    static final SampleDaemon.Job STOP = new SampleDaemon.Job(null, null, null, 0, null);
+
+    private final SampleDaemon daemon;
+    private final BlockingQueue<SampleDaemon.Job> queue;
+    private final ScheduledExecutorService timers;
+    private volatile boolean abandoned;
+
+    DaemonWorker(SampleDaemon daemon, BlockingQueue<SampleDaemon.Job> queue, ScheduledExecutorService timers, int number)
+    {
+        super("DaemonWorker-" + number);
+        this.daemon = daemon;
+        this.queue = queue;
+        this.timers = timers;
+        setDaemon(true); // a worker stuck in a timed-out job must not keep the process alive
+    }
+
+    /**
+     * Gives up on this worker after its job timed out.
+     */
+    void abandon()
+    {
+        abandoned = true;
+        interrupt();
+    }
+
+    boolean isAbandoned()
+    {
+        return abandoned;
+    }
+
+    @Override
+    public void run()
+    {
+        OutputRouter.route(null); // not the route of whichever thread started this one
+        Library lib = null;
+        Throwable startFailure = null;
+        try {
+            lib = new Library();
+        } catch (Throwable t) {
+            startFailure = t;
+        }
+        try {
+            while (lib != null && !abandoned) {
+                SampleDaemon.Job job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (job == STOP)
+                    break;
+                if (!job.start())
+                    continue;
+
+                ScheduledFuture<?> timer = timers.schedule(() -> daemon.timeOut(job, this),
+                        job.timeoutMillis, TimeUnit.MILLISECONDS);
+                OutputRouter.route(job::output);
+                try {
+                    daemon.dispatch(job);
+                    OutputRouter.finish();
+                    job.finish("ok", null);
+                } catch (Throwable t) {
+                    OutputRouter.finish();
+                    job.finish("error", SampleDaemon.describe(t));
+                } finally {
+                    OutputRouter.route(null);
+                    timer.cancel(false);
+                    Thread.interrupted(); // a late timeout must not interrupt the next job
+                }
+            }
+        } finally {
+            if (lib != null)
+                lib.delete();
+            daemon.workerExited(this, startFailure);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * OutputRouter
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * Stands in for System.out and System.err so that what a sample prints
+ * while running a job reaches that job's client, line by line, even with
+ * several jobs running at once on different workers. Each worker thread
+ * routes its output to its current job, and threads a job starts, such as
+ * the BatchAuditor workers of an audit -batch job, inherit the route; output
+ * from any other thread goes to the stream the router replaced.
+ */
+final class OutputRouter extends OutputStream {
+
+    private static final ThreadLocal<Consumer<String>> target = new InheritableThreadLocal<>();
+    private static OutputRouter outRouter;
+    private static OutputRouter errRouter;
+
+    private final OutputStream fallback;
+    private final ThreadLocal<ByteArrayOutputStream> pending = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+    private OutputRouter(OutputStream fallback)
+    {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Replaces System.out and System.err with routers.
+     *
+     * @param out where output from threads without a job goes
+     */
+    static void install(PrintStream out)
+    {
+        outRouter = new OutputRouter(out);
+        errRouter = new OutputRouter(System.err);
+        System.setOut(new PrintStream(outRouter, true));
+        System.setErr(new PrintStream(errRouter, true));
+    }
+
+    /**
+     * Sends what the current thread prints to the sink, one line at a time,
+     * or back to the replaced streams if the sink is null.
+     */
+    static void route(Consumer<String> sink)
+    {
+        target.set(sink);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        Consumer<String> sink = target.get();
+        if (sink == null) {
+            fallback.write(b);
+            return;
+        }
+        ByteArrayOutputStream line = pending.get();
+        if (b == '\n') {
+            sink.accept(line.toString(Charset.defaultCharset()));
+            line.reset();
+        } else if (b != '\r') {
+            line.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (target.get() == null) {
+            fallback.write(b, off, len);
+            return;
+        }
+        for (int i = off; i < off + len; ++i)
+            write(b[i]);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if (target.get() == null)
+            fallback.flush();
+    }
+
+    /**
+     * Sends any unterminated last line the current thread printed to its sink.
+     * Threads the job started are expected to have ended their lines, as
+     * println does.
+     */
+    static void finish()
+    {
+        Consumer<String> sink = target.get();
+        if (sink == null)
+            return;
+        System.out.flush();
+        System.err.flush();
+        outRouter.flushPending(sink);
+        errRouter.flushPending(sink);
+    }
+
+    private void flushPending(Consumer<String> sink)
+    {
+        ByteArrayOutputStream line = pending.get();
+        if (line.size() > 0) {
+            sink.accept(line.toString(Charset.defaultCharset()));
+            line.reset();
+        }
+    }
+}
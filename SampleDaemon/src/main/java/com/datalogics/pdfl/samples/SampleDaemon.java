@@ -0,0 +1,482 @@
+/*
+ * SampleDaemon
+ *
+ * Copyright (c) 2024 Datalogics, Inc. All rights reserved.
+ *
+ * The information and code in this sample is for the exclusive use of Datalogics customers and evaluation users only.
+ * Datalogics permits you to use, modify and distribute this file in accordance with the terms of your license
+ * agreement. Sample code is for demonstrative purposes only and is not intended for production use.
+ *
+ */
+package com.datalogics.pdfl.samples;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the samples resident so each document costs only its own work: the
+ * JVM starts once and every worker thread initializes its Library once, then
+ * runs AuditInfo, FormWalker, ListDocFonts and ExtractLayers jobs as they
+ * arrive.
+ *
+ * Jobs arrive one per line, over standard input or a loopback TCP socket,
+ * as tab-separated fields:
+ *
+ *     id  tool  timeout-ms  argument...
+ *
+ * where tool is audit, forms, fonts or layers, the arguments are the
+ * sample's own command-line arguments, and an empty timeout means the
+ * default. An argument of "-" is refused, since a job cannot read the
+ * daemon's standard input. Each line the job prints comes back as "id out line" and the
+ * job ends with "id done status millis [message]", the status being ok,
+ * error, timeout or rejected. "id ping" is answered at once, ok while the
+ * daemon is healthy and error once too many workers are stuck, and
+ * "id drain" stops the daemon gracefully: new jobs are rejected, queued
+ * and running ones finish (for as long as the drain timeout allows), and
+ * the workers release their libraries. End of input, and SIGTERM, drain
+ * the same way.
+ *
+ * A worker whose job timed out may stay stuck in a library call, holding its
+ * Library and document, while a replacement takes its place. At most
+ * -max-stuck such workers are replaced; from then on new jobs are answered
+ * with an error and ping reports the daemon unhealthy, so that a supervisor
+ * can restart the process. It recovers as stuck workers return.
+ */
+public class SampleDaemon {
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+    static final long DEFAULT_DRAIN_MILLIS = 30_000;
+    static final int DEFAULT_MAX_STUCK = 4;
+
+    private static final Set<String> TOOLS = new HashSet<>(Arrays.asList("audit", "forms", "fonts", "layers"));
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    /**
+     * Where a connection's responses go; lines from different jobs interleave but never mix.
+     */
+    static final class Client {
+        private final Writer writer;
+        private boolean closed;
+
+        Client(OutputStream out)
+        {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        synchronized void send(String line)
+        {
+            if (closed)
+                return;
+            try {
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                closed = true; // the client went away; its jobs still run to completion.
+            }
+        }
+    }
+
+    static final class Job {
+        final String id;
+        final String tool;
+        final String[] args;
+        final long timeoutMillis;
+        private final Client client;
+        private final long received = System.nanoTime();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private SampleDaemon daemon;
+
+        Job(String id, String tool, String[] args, long timeoutMillis, Client client)
+        {
+            this.id = id;
+            this.tool = tool;
+            this.args = args;
+            this.timeoutMillis = timeoutMillis;
+            this.client = client;
+        }
+
+        /**
+         * @return false if the job already ended (timed out or drained) while it was queued.
+         */
+        boolean start()
+        {
+            return state.compareAndSet(QUEUED, RUNNING);
+        }
+
+        void output(String line)
+        {
+            if (state.get() != DONE)
+                client.send(id + "\tout\t" + line);
+        }
+
+        /**
+         * Ends the job with its one "done" line.
+         *
+         * @return false if it had already ended.
+         */
+        boolean finish(String status, String message)
+        {
+            if (state.getAndSet(DONE) == DONE)
+                return false;
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - received);
+            client.send(id + "\tdone\t" + status + "\t" + millis + (message != null ? "\t" + message : ""));
+            if (daemon != null)
+                daemon.jobEnded();
+            return true;
+        }
+    }
+
+    private final int workerCount;
+    private final long defaultTimeout;
+    private final long drainMillis;
+    private final int maxStuck;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "DaemonTimers");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<DaemonWorker> workers = new HashSet<>();
+    private final AtomicInteger workerNumbers = new AtomicInteger();
+    private int inFlight;
+    /** abandoned workers that have not exited yet. */
+    private int stuck;
+    private boolean draining;
+    private boolean drained;
+    private Throwable startFailure;
+    private ServerSocket server;
+
+    SampleDaemon(int workerCount, long defaultTimeout, long drainMillis, int maxStuck)
+    {
+        this.workerCount = workerCount;
+        this.defaultTimeout = defaultTimeout;
+        this.drainMillis = drainMillis;
+        this.maxStuck = maxStuck;
+    }
+
+    synchronized void start()
+    {
+        for (int i = 0; i < workerCount; ++i)
+            startWorker();
+    }
+
+    private synchronized void startWorker()
+    {
+        DaemonWorker worker = new DaemonWorker(this, queue, timers, workerNumbers.incrementAndGet());
+        workers.add(worker);
+        worker.start();
+    }
+
+    /**
+     * @param startFailure why the worker could not create its Library, or null if it ran.
+     */
+    synchronized void workerExited(DaemonWorker worker, Throwable startFailure)
+    {
+        workers.remove(worker);
+        if (worker.isAbandoned()) {
+            --stuck;
+            // a stuck worker that was not replaced leaves a gap, which it can now fill.
+            if (!draining && workers.size() - stuck < workerCount)
+                startWorker();
+        }
+        if (startFailure != null) {
+            this.startFailure = startFailure;
+            System.err.println(worker.getName() + " could not start: " + describe(startFailure));
+            // with no worker left nothing would ever answer the queued jobs.
+            if (workers.isEmpty()) {
+                for (Job job = queue.poll(); job != null; job = queue.poll())
+                    job.finish("error", "no worker could start: " + describe(startFailure));
+            }
+        }
+        notifyAll();
+    }
+
+    static String describe(Throwable t)
+    {
+        return t.getClass().getSimpleName() + (t.getMessage() != null ? ": " + t.getMessage() : "");
+    }
+
+    synchronized void jobEnded()
+    {
+        --inFlight;
+        notifyAll();
+    }
+
+    /**
+     * Answers a job that ran too long and replaces the worker stuck in it,
+     * unless too many workers are stuck already.
+     */
+    void timeOut(Job job, DaemonWorker worker)
+    {
+        if (!job.finish("timeout", "no result after " + job.timeoutMillis + " ms"))
+            return;
+        synchronized (this) {
+            worker.abandon();
+            ++stuck;
+            if (drained)
+                return;
+            if (stuck <= maxStuck) {
+                startWorker();
+            } else if (workers.size() == stuck) {
+                // every worker is stuck, so nothing would answer the queued jobs.
+                for (Job queued = queue.poll(); queued != null; queued = queue.poll())
+                    queued.finish("error", health());
+            }
+        }
+    }
+
+    /**
+     * @return why the daemon is unhealthy, or null if it is not.
+     */
+    private synchronized String health()
+    {
+        return stuck >= maxStuck ? stuck + " workers are stuck in timed-out jobs" : null;
+    }
+
+    /**
+     * Runs the job's sample on the calling worker thread, whose Library is already initialized.
+     */
+    void dispatch(Job job) throws Exception
+    {
+        switch (job.tool) {
+            case "audit":
+                AuditInfo.run(job.args, false);
+                break;
+            case "forms":
+                FormWalker.run(job.args);
+                break;
+            case "fonts":
+                ListDocFonts.run(job.args);
+                break;
+            case "layers":
+                ExtractLayers.run(job.args);
+                break;
+        }
+    }
+
+    /**
+     * Handles one request line from the client.
+     */
+    void handle(String line, Client client)
+    {
+        if (line.isEmpty())
+            return;
+        String[] fields = line.split("\t", -1);
+        String id = fields[0];
+        String tool = fields.length > 1 ? fields[1] : "";
+        if (tool.equals("ping")) {
+            String unhealthy = health();
+            client.send(id + "\tdone\t" + (unhealthy == null ? "ok\t0" : "error\t0\t" + unhealthy));
+            return;
+        }
+        if (tool.equals("drain")) {
+            client.send(id + "\tdone\tok\t0");
+            new Thread(this::drain, "DaemonDrain").start();
+            return;
+        }
+        if (!TOOLS.contains(tool)) {
+            client.send(id + "\tdone\terror\t0\tunknown tool " + tool);
+            return;
+        }
+
+        long timeout = defaultTimeout;
+        try {
+            if (fields.length > 2 && !fields[2].isEmpty())
+                timeout = Long.parseLong(fields[2]);
+        } catch (NumberFormatException e) {
+            client.send(id + "\tdone\terror\t0\tbad timeout " + fields[2]);
+            return;
+        }
+        String[] args = fields.length > 3 ? Arrays.copyOfRange(fields, 3, fields.length) : new String[0];
+        if (Arrays.asList(args).contains("-")) {
+            // standard input is the daemon's, and in stdin mode it carries the requests themselves.
+            client.send(id + "\tdone\terror\t0\tdaemon jobs cannot read standard input; pass a file");
+            return;
+        }
+        Job job = new Job(id, tool, args, timeout, client);
+        synchronized (this) {
+            if (draining) {
+                client.send(id + "\tdone\trejected\t0\tdraining");
+                return;
+            }
+            if (workers.isEmpty() && startFailure != null) {
+                client.send(id + "\tdone\terror\t0\tno worker could start: " + describe(startFailure));
+                return;
+            }
+            String unhealthy = health();
+            if (unhealthy != null) {
+                client.send(id + "\tdone\terror\t0\t" + unhealthy);
+                return;
+            }
+            job.daemon = this;
+            ++inFlight;
+            queue.add(job);
+        }
+    }
+
+    /**
+     * Reads request lines until the client closes its side.
+     */
+    void serve(BufferedReader in, Client client) throws IOException
+    {
+        for (String line = in.readLine(); line != null; line = in.readLine())
+            handle(line, client);
+    }
+
+    /**
+     * Accepts connections on the loopback interface until drained.
+     */
+    void listen(int port) throws IOException
+    {
+        synchronized (this) {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        }
+        System.err.println("SampleDaemon listening on " + server.getLocalSocketAddress());
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                break; // closed by drain
+            }
+            Thread connection = new Thread(() -> {
+                try (Socket s = socket) {
+                    serve(new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)),
+                            new Client(s.getOutputStream()));
+                } catch (IOException ignored) {
+                    // the client went away.
+                }
+            }, "DaemonConnection");
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Stops taking jobs, waits for the accepted ones to end, then stops the
+     * workers. Jobs still queued when the drain timeout runs out are
+     * rejected; running ones are left to their own timeouts. Safe to call
+     * more than once.
+     */
+    void drain()
+    {
+        synchronized (this) {
+            if (draining) {
+                awaitDrained();
+                return;
+            }
+            draining = true;
+            try {
+                if (server != null)
+                    server.close();
+            } catch (IOException ignored) {
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainMillis);
+            try {
+                for (long left = drainMillis; inFlight > 0 && left > 0;
+                     left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))
+                    wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (Job job = queue.poll(); job != null; job = queue.poll())
+            job.finish("rejected", "draining");
+        synchronized (this) {
+            for (int i = 0; i < workers.size(); ++i)
+                queue.add(DaemonWorker.STOP);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            try {
+                while (!workers.isEmpty() && deadline - System.nanoTime() > 0)
+                    wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            timers.shutdownNow();
+            drained = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until a drain, begun by any thread, has stopped the workers.
+     */
+    synchronized void awaitDrained()
+    {
+        while (!drained) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param args [-port n] [-workers n] [-timeout ms] [-drain ms] [-max-stuck n]; without -port, jobs are read from
+     *             standard input.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = -1;
+        int workerCount = 1;
+        long timeout = DEFAULT_TIMEOUT_MILLIS;
+        long drainMillis = DEFAULT_DRAIN_MILLIS;
+        int maxStuck = DEFAULT_MAX_STUCK;
+        for (int i = 0; i < args.length - 1; ++i) {
+            if (args[i].equals("-port"))
+                port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-workers"))
+                workerCount = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-timeout"))
+                timeout = Long.parseLong(args[++i]);
+            else if (args[i].equals("-drain"))
+                drainMillis = Long.parseLong(args[++i]);
+            else if (args[i].equals("-max-stuck"))
+                maxStuck = Integer.parseInt(args[++i]);
+        }
+
+        // over stdin the protocol owns standard output, so anything printed outside a job goes to stderr.
+        PrintStream protocol = System.out;
+        OutputRouter.install(port < 0 ? System.err : System.out);
+
+        SampleDaemon daemon = new SampleDaemon(workerCount, timeout, drainMillis, maxStuck);
+        daemon.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::drain, "DaemonShutdown"));
+
+        if (port < 0) {
+            // a drain request stops the daemon without waiting for the end of input, so the reading thread must not
+            // keep the process alive while it is blocked.
+            Thread input = new Thread(() -> {
+                try {
+                    daemon.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                            new Client(protocol));
+                } catch (IOException e) {
+                    System.err.println("SampleDaemon cannot read its input: " + e.getMessage());
+                }
+                daemon.drain();
+            }, "DaemonInput");
+            input.setDaemon(true);
+            input.start();
+            daemon.awaitDrained();
+        } else {
+            daemon.listen(port);
+            daemon.drain();
+        }
+    }
+}